@@ -1,9 +1,11 @@
 import java.io.*;
 import java.net.*;
 import java.security.KeyStore;
+import java.util.Set;
 import java.util.concurrent.*;
 import javax.net.ssl.*;
 import java.util.logging.FileHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -11,122 +13,521 @@ import java.nio.file.Paths;
 import java.nio.file.Files;
 
 public class HttpsServer implements Runnable {
-	private static final String DEFAULT_PAGE = "index.html";
-	private static final String ROOT_DIR = "RootDir";
 	private static final int MAX_LINES_FOR_FILE = 200;
+	// A client that sends nothing for this long (e.g. a browser's speculative preconnect) gives its thread back
+	private static final int CLIENT_READ_TIMEOUT_MILLIS = 15000;
 	public static Logger excLogger = Logger.getLogger("Exception");
+	private static Logger userLogger = Logger.getLogger("User Interaction");
+	private static Logger closeLogger = Logger.getLogger("Closed Connection");
+	private static Logger slowLogger = Logger.getLogger("Slow Request");
+	// The loggers are shared by every server instance in the JVM, so their file handlers are too
+	private static String attachedLogDir;
+	private static Handler[] attachedHandlers;
 
-	public void run() {
-		
-		// Initial parameters
-		int port = 443;
-		String keystorePath = "RootDir/mykey.keystore";
-		String keystorePassword = "mypassword";
+	private final ServerConfig config;
+	private volatile boolean running = true;
+	private ServerSocket serverSocket;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	private volatile boolean listening = false;
+	private volatile long startupMillis = -1;
+	private String logDir;
+	private SSLSocketFactory sslSocketFactory;
+	private ThreadPoolExecutor threadPool;
+	// The RootDir snapshot new connections are served from. Swapped atomically by switchRoot().
+	private volatile File rootDirectory;
+	private ResponseCache responseCache; // null unless config.getCachePaths() names routes to cache
+	private final ServerStats stats = new ServerStats();
+	// Connections handed to the pool and not finished yet, so drain() can close them once its deadline passes
+	private final Set<Socket> openConnections = ConcurrentHashMap.newKeySet();
 
-		// Setting property for SSL keystore and keystore password
-		System.setProperty("javax.net.ssl.keyStore", keystorePath);
-		System.setProperty("javax.net.ssl.keyStorePassword", keystorePassword);
-
-		// creating loggers and file handlers
-		Logger userLogger = Logger.getLogger("User Interaction");
-		Logger closeLogger = Logger.getLogger("Closed Connection");
-		FileHandler fhExc;
-		FileHandler fhUser;
-		FileHandler fhClose;
-		SimpleFormatter formatter = new SimpleFormatter();
-		SimpleFormatter formatter2 = new SimpleFormatter();
-		SimpleFormatter formatter3 = new SimpleFormatter();
+	/**
+	 * <h3>HttpsServer Constructor</h3>
+	 *
+	 * <p>
+	 * Constructs a server on port 443, serving RootDir with the bundled keystore.
+	 * </p>
+	 */
+	public HttpsServer() {
+		this(new ServerConfig());
+	}
 
-		try {
+	/**
+	 * <h3>HttpsServer Constructor</h3>
+	 *
+	 * <p>
+	 * Constructs a server with explicit parameters, so it can be run somewhere other than
+	 * the default RootDir on port 443 (benchmarks, local test instances).
+	 * </p>
+	 *
+	 * @param port             the port to listen on
+	 * @param keystorePath     path of the JKS keystore holding the server certificate
+	 * @param keystorePassword password of the keystore
+	 * @param rootDir          the directory files are served from. Logs are written to rootDir/Logs
+	 */
+	public HttpsServer(int port, String keystorePath, String keystorePassword, String rootDir) {
+		this(new ServerConfig());
+		config.setPort(port);
+		config.setKeystorePath(keystorePath);
+		config.setKeystorePassword(keystorePassword);
+		config.setRootDir(rootDir);
+	}
 
-			// SSLContext for handling SSL/TLS communication
-			SSLContext sslContext = SSLContext.getInstance("SSL");
-			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+	/**
+	 * <h3>HttpsServer Constructor</h3>
+	 *
+	 * <p>
+	 * Constructs a server from a full configuration (see ServerConfig for the keys and defaults).
+	 * A server instance runs once: after stop(), create a new instance to serve again.
+	 * </p>
+	 *
+	 * @param config the configuration to run with
+	 */
+	public HttpsServer(ServerConfig config) {
+		this.config = config;
+	}
 
-			// KeyStore for managing keys / certificates,
-			KeyStore keyStore = KeyStore.getInstance("JKS");
+	/**
+	 * <h3>HttpsServer Run (Runnable implementation)</h3>
+	 *
+	 * <p>
+	 * Runs the server standalone: prepares it, listens on the configured port and dispatches every accepted
+	 * connection until stop() is called, then drains. ServerLifecycle instead owns the listening socket itself
+	 * and drives prepare(), dispatch() and drain() directly.
+	 * </p>
+	 */
+	public void run() {
+		long startNanos = System.nanoTime();
 
-			// Loading keystore file
-			FileInputStream keystoreFile = new FileInputStream(keystorePath);
+		try {
+			prepare();
+			ServerSocket socket = new ServerSocket(config.getPort(), 0, InetAddress.getByName(config.getBindAddress()));
 
-			keyStore.load(keystoreFile, keystorePassword.toCharArray());
-			keystoreFile.close();
-
-			// Make KeyManagerFactory
-			keyManagerFactory.init(keyStore, keystorePassword.toCharArray());
-			TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
-			trustManagerFactory.init(keyStore);
-
-			sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
-
-			// Creating SSLServerSocketFactory and SSLServerSocket
-			SSLServerSocketFactory socketFactory = sslContext.getServerSocketFactory();
-			SSLServerSocket serverSocket = (SSLServerSocket) socketFactory.createServerSocket(port);
-			// Cast the ExecutorService to a ThreadPoolExecutor to reduce the keep-alive time and limit thread executions since
-			// we do not have super-computers---and RAM resources become very limited if the large demo downloads are attempted. :P
-			ThreadPoolExecutor threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool(); 
-			threadPool.setKeepAliveTime(2L, TimeUnit.SECONDS); // After finishing executions, threads may idle for max 2 seconds.
-			threadPool.setCorePoolSize(0); // At no requests, close all threads.
-			threadPool.setMaximumPoolSize(20); // Maximum 20 threads at any time
-			// Setting the need for client authentication
-			serverSocket.setNeedClientAuth(false);
-			serverSocket.setSoTimeout(2000);
-
-			//assign files to loggers
-			fhExc = new FileHandler("RootDir/Logs/exceptions.txt", true);
-			fhUser = new FileHandler("RootDir/Logs/interaction.txt", true);
-			fhClose = new FileHandler("RootDir/Logs/close_socket.txt", true);
-			fhExc.setFormatter(formatter);
-    		fhUser.setFormatter(formatter2);
-			fhClose.setFormatter(formatter3);
-			excLogger.addHandler(fhExc);
-			userLogger.addHandler(fhUser);
-			closeLogger.addHandler(fhClose);
-			excLogger.setUseParentHandlers(false);
-			userLogger.setUseParentHandlers(false);
-			closeLogger.setUseParentHandlers(false);
+			// stop() closes the listening socket to unblock accept(), so publish it under the same lock
+			synchronized (this) {
+				serverSocket = socket;
+				if (!running) {
+					socket.close();
+				}
+			}
+			startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			listening = true;
+			started.countDown();
 
 			// *** Main server loop ***
-			System.out.println("Server is running... Go here: https://localhost:443");
-			while (LoginGUI.runServer) {
-				Socket socket = null;
-
-				// checking the size of file every iteration
-				String fileDir = "RootDir/Logs/interaction.txt";
-				checkLines(fileDir);
-				String filePath = "RootDir/Logs/exceptions.txt";
-				checkLines(filePath);
-				String filePath2 = "RootDir/Logs/close_socket.txt";
-				checkLines(filePath2);
-
+			System.out.println("Server is running... Go here: " + (config.isTlsEnabled() ? "https" : "http") + "://localhost:" + config.getPort()
+					+ " (started in " + startupMillis + " ms)");
+			while (running) {
 				try{
-					socket = serverSocket.accept();	
-					// Thread HTTP Integration
-					Runnable runnableThread = new ThreadHTTP(new File(ROOT_DIR), DEFAULT_PAGE, socket);
-					threadPool.submit(runnableThread);
-					userLogger.log(Level.INFO, "User Interaction");
+					dispatch(socket.accept());
 				} catch(Exception e) {
+					if (!running) {
+						break; // stop() closed the listening socket
+					}
 					System.gc();
 					String exception = e.toString();
 					excLogger.log(Level.WARNING, exception);
-				} 
+				}
 			}
-			threadPool.shutdownNow();
-			serverSocket.close();
+
+			drain();
+			socket.close();
 			System.out.println("Server is stopped");
-			closeLogger.log(Level.INFO, "Client Connection has been closed");
 
 		} catch (Exception e) {
 			//e.printStackTrace();
 
 			String exception = e.toString();
 			excLogger.log(Level.WARNING, exception);
+		} finally {
+			started.countDown();
+			terminated.countDown();
+		}
+	}
+
+	/**
+	 * <h3>prepare</h3>
+	 *
+	 * <p>
+	 * Does all start-up work short of listening: the SSLContext (unless TLS is disabled), log files, thread pool,
+	 * PHP response cache and a RootDir warm-up.
+	 * Tasks that do not depend on each other run in parallel, since loading the keystore and initialising
+	 * the SSLContext is the slow part.
+	 * </p>
+	 *
+	 * @throws Exception - If the keystore cannot be loaded or the log files cannot be opened
+	 */
+	public void prepare() throws Exception {
+		// Setting property for SSL keystore and keystore password
+		System.setProperty("javax.net.ssl.keyStore", config.getKeystorePath());
+		System.setProperty("javax.net.ssl.keyStorePassword", config.getKeystorePassword());
+
+		File root = new File(config.getRootDir());
+		CompletableFuture<SSLContext> sslContextFuture = CompletableFuture.supplyAsync(() -> {
+			if (!config.isTlsEnabled()) {
+				return null;
+			}
+			try {
+				return createSslContext(config.getKeystorePath(), config.getKeystorePassword());
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		});
+		CompletableFuture<Void> warmUpFuture = CompletableFuture.runAsync(() -> warmUp(root));
+
+		try {
+			logDir = config.getLogDir();
+			attachLogHandlers(logDir);
+			SSLContext sslContext = sslContextFuture.join();
+			sslSocketFactory = sslContext == null ? null : sslContext.getSocketFactory();
+			warmUpFuture.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+
+		// Cast the ExecutorService to a ThreadPoolExecutor to reduce the keep-alive time and limit thread executions since
+		// we do not have super-computers---and RAM resources become very limited if the large demo downloads are attempted. :P
+		threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+		threadPool.setKeepAliveTime(2L, TimeUnit.SECONDS); // After finishing executions, threads may idle for max 2 seconds.
+		threadPool.setCorePoolSize(0); // At no requests, close all threads.
+		threadPool.setMaximumPoolSize(config.getMaxThreads()); // Maximum 20 threads at any time by default
+		if (!config.getCachePaths().isEmpty()) {
+			responseCache = new ResponseCache(config.getCachePaths(), config.getCacheTtlSeconds(),
+					config.getCacheMaxMegabytes() * 1024L * 1024L);
+		}
+		rootDirectory = root;
+	}
+
+	/**
+	 * <h3>dispatch</h3>
+	 *
+	 * <p>
+	 * Hands an accepted TCP connection to this server: TLS is layered on top (server mode, no client
+	 * authentication) unless disabled, and the request is processed on the thread pool against the current
+	 * RootDir snapshot. The TLS handshake itself happens on the pool thread. Emits the ConnectionAccepted and
+	 * ConnectionRejected JFR events and starts the connection's RequestTrace. Reads from the client time out
+	 * after 15 seconds of silence.
+	 * </p>
+	 *
+	 * @param plainSocket a freshly accepted, not yet TLS, connection
+	 * @return false if this server has been drained and takes no more connections; the caller still owns the socket
+	 * @throws IOException - If the TLS socket cannot be created
+	 */
+	public boolean dispatch(Socket plainSocket) throws IOException {
+		ServerEvents.ConnectionAccepted acceptedEvent = new ServerEvents.ConnectionAccepted();
+		acceptedEvent.begin();
+		RequestTrace trace = RequestTrace.start(config.getTraceSampleRate(), config.getTraceSlowMillis());
+		// checking the size of file every connection
+		String fileDir = logDir + "/interaction.txt";
+		checkLines(fileDir);
+		String filePath = logDir + "/exceptions.txt";
+		checkLines(filePath);
+		String filePath2 = logDir + "/close_socket.txt";
+		checkLines(filePath2);
+		trace.mark(RequestTrace.Phase.LOG_CHECK);
+
+		if (threadPool.isShutdown()) {
+			return false;
+		}
+		plainSocket.setSoTimeout(CLIENT_READ_TIMEOUT_MILLIS);
+		Socket socket = plainSocket;
+		if (sslSocketFactory != null) {
+			SSLSocket tlsSocket = (SSLSocket) sslSocketFactory.createSocket(plainSocket,
+					plainSocket.getInetAddress().getHostAddress(), plainSocket.getPort(), true);
+			tlsSocket.setUseClientMode(false);
+			tlsSocket.setNeedClientAuth(false);
+			socket = tlsSocket;
+		}
+		try {
+			// Thread HTTP Integration
+			ThreadHTTP request = new ThreadHTTP(rootDirectory, config.getDefaultPage(), socket, responseCache, stats,
+					trace);
+			openConnections.add(plainSocket);
+			threadPool.submit(() -> {
+				try {
+					request.run();
+				} finally {
+					openConnections.remove(plainSocket);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			openConnections.remove(plainSocket);
+			if (threadPool.isShutdown()) {
+				return false; // drained between the check above and here
+			}
+			socket.close();
+			stats.connectionRejected();
+			ServerEvents.ConnectionRejected rejectedEvent = new ServerEvents.ConnectionRejected();
+			if (rejectedEvent.shouldCommit()) {
+				rejectedEvent.remoteAddress = plainSocket.getInetAddress().getHostAddress();
+				rejectedEvent.maxThreads = config.getMaxThreads();
+				rejectedEvent.commit();
+			}
+			excLogger.log(Level.WARNING, "Connection rejected, all " + config.getMaxThreads() + " threads are busy");
+			return true;
+		}
+		userLogger.log(Level.INFO, "User Interaction");
+		acceptedEvent.end();
+		if (acceptedEvent.shouldCommit()) {
+			acceptedEvent.remoteAddress = plainSocket.getInetAddress().getHostAddress();
+			acceptedEvent.tls = sslSocketFactory != null;
+			acceptedEvent.commit();
+		}
+		return true;
+	}
+
+	/**
+	 * <h3>switchRoot</h3>
+	 *
+	 * <p>
+	 * Atomically switches the directory files are served from. Connections dispatched before the switch finish
+	 * against the old directory; every later one sees the new one. Logs stay where they were.
+	 * </p>
+	 *
+	 * @param newRoot the fully populated directory to serve from now on
+	 * @throws IllegalArgumentException - If newRoot is not a readable directory
+	 */
+	public void switchRoot(File newRoot) {
+		if (!newRoot.isDirectory() || !newRoot.canRead()) {
+			throw new IllegalArgumentException("Not a readable directory: " + newRoot);
+		}
+		warmUp(newRoot);
+		rootDirectory = newRoot;
+		System.out.println("Now serving " + newRoot.getPath());
+	}
+
+	/**
+	 * @return the directory new connections are currently served from
+	 */
+	public File getRootDirectory() {
+		return rootDirectory;
+	}
+
+	/**
+	 * <h3>drain</h3>
+	 *
+	 * <p>
+	 * Takes no more connections and waits for in-flight requests to finish. Connections still open after
+	 * the configured drain deadline are closed, which also ends requests blocked reading from the client.
+	 * </p>
+	 *
+	 * @return true if every request finished within the deadline
+	 * @throws InterruptedException - If interrupted while waiting
+	 */
+	public boolean drain() throws InterruptedException {
+		if (threadPool == null) {
+			return true; // never prepared, nothing in flight
+		}
+		threadPool.shutdown();
+		boolean drained = threadPool.awaitTermination(config.getDrainSeconds(), TimeUnit.SECONDS);
+		if (!drained) {
+			excLogger.log(Level.WARNING, "Drain deadline passed, closing " + openConnections.size() + " connections");
+			// Interrupting alone does not unblock a thread stuck in a socket read; closing the socket does
+			for (Socket connection : openConnections) {
+				try {
+					connection.close();
+				} catch (IOException e) {
+					// Already gone
+				}
+			}
+			threadPool.shutdownNow();
+		}
+		closeLogger.log(Level.INFO, "Client Connection has been closed");
+		return drained;
+	}
+
+	/**
+	 * <h3>stop</h3>
+	 *
+	 * <p>
+	 * Stops accepting connections immediately by closing the listening socket. run() then drains
+	 * in-flight requests for up to the configured drain deadline and returns. Does not block;
+	 * use awaitTermination() to wait for the drain.
+	 * </p>
+	 */
+	public void stop() {
+		synchronized (this) {
+			running = false;
+			if (serverSocket != null) {
+				try {
+					serverSocket.close();
+				} catch (IOException e) {
+					excLogger.log(Level.WARNING, e.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * <h3>awaitStarted</h3>
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit    the unit of the timeout
+	 * @return true once the server is accepting connections, false if start-up failed or timed out
+	 * @throws InterruptedException - If interrupted while waiting
+	 */
+	public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+		return started.await(timeout, unit) && listening;
+	}
+
+	/**
+	 * <h3>awaitTermination</h3>
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit    the unit of the timeout
+	 * @return true if run() has returned, false on timeout
+	 * @throws InterruptedException - If interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * @return milliseconds from run() being called until the server was accepting connections, or -1 before that
+	 */
+	public long getStartupMillis() {
+		return startupMillis;
+	}
+
+	public ServerConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return this instance's PHP response cache, or null if no routes are cached
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * @return request counters for this instance; safe to sample from any thread
+	 */
+	public ServerStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return connections waiting for a pool thread (without taking the pool's lock)
+	 */
+	public int getQueuedConnections() {
+		ThreadPoolExecutor pool = threadPool;
+		return pool == null ? 0 : pool.getQueue().size();
+	}
+
+	/**
+	 * <h3>createSslContext</h3>
+	 *
+	 * <p>
+	 * Builds the server's SSLContext from a JKS keystore. The same keystore is also used as the trust store,
+	 * which is what lets ReverseProxy talk to HttpsServer backends sharing the keystore.
+	 * </p>
+	 *
+	 * @param keystorePath     path of the JKS keystore
+	 * @param keystorePassword password of the keystore
+	 * @return an initialised SSLContext
+	 * @throws Exception - If the keystore cannot be read or holds no usable key
+	 */
+	public static SSLContext createSslContext(String keystorePath, String keystorePassword) throws Exception {
+
+		// SSLContext for handling SSL/TLS communication
+		SSLContext sslContext = SSLContext.getInstance("SSL");
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+
+		// KeyStore for managing keys / certificates,
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+
+		// Loading keystore file
+		try (FileInputStream keystoreFile = new FileInputStream(keystorePath)) {
+			keyStore.load(keystoreFile, keystorePassword.toCharArray());
+		}
+
+		// Make KeyManagerFactory
+		keyManagerFactory.init(keyStore, keystorePassword.toCharArray());
+		TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
+		trustManagerFactory.init(keyStore);
+
+		sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+		return sslContext;
+	}
+
+	/*
+	Points the shared loggers at logDir, creating it if needed. Re-attaching the same directory is a no-op: a
+	second FileHandler on the same file would not share it but roll over to exceptions.txt.1 and so on.
+	*/
+	private static synchronized void attachLogHandlers(String logDir) throws IOException {
+		if (logDir.equals(attachedLogDir)) {
+			return;
+		}
+		Files.createDirectories(Paths.get(logDir));
+		Logger[] loggers = {excLogger, userLogger, closeLogger, slowLogger};
+		if (attachedHandlers != null) {
+			for (int i = 0; i < loggers.length; i++) {
+				loggers[i].removeHandler(attachedHandlers[i]);
+				attachedHandlers[i].close();
+			}
+		}
+
+		//assign files to loggers
+		FileHandler fhExc = new FileHandler(logDir + "/exceptions.txt", true);
+		FileHandler fhUser = new FileHandler(logDir + "/interaction.txt", true);
+		FileHandler fhClose = new FileHandler(logDir + "/close_socket.txt", true);
+		FileHandler fhSlow = new FileHandler(logDir + "/slow_requests.txt", true);
+		fhExc.setFormatter(new SimpleFormatter());
+		fhUser.setFormatter(new SimpleFormatter());
+		fhClose.setFormatter(new SimpleFormatter());
+		fhSlow.setFormatter(new SimpleFormatter());
+		attachedHandlers = new Handler[] {fhExc, fhUser, fhClose, fhSlow};
+		for (int i = 0; i < loggers.length; i++) {
+			loggers[i].addHandler(attachedHandlers[i]);
+			loggers[i].setUseParentHandlers(false);
+		}
+		attachedLogDir = logDir;
+	}
+
+	/*
+	Writes one line to Logs/slow_requests.txt (see RequestTrace). Only slow requests get here, so the file's
+	size is checked on write rather than on every connection like the other logs.
+	*/
+	static void logSlowRequest(String line) {
+		String logDir;
+		synchronized (HttpsServer.class) {
+			logDir = attachedLogDir;
+		}
+		try {
+			if (logDir != null) {
+				checkLines(logDir + "/slow_requests.txt");
+			}
+		} catch (IOException e) {
+			excLogger.log(Level.WARNING, e.toString());
+		}
+		slowLogger.log(Level.WARNING, line);
+	}
+
+	/*
+	Pays the one-time costs the first request would otherwise see: resolving the canonical root path,
+	loading the JDK's MIME type table, and pulling the default page into the OS file cache.
+	A failure here is only logged; the server still starts.
+	*/
+	private void warmUp(File root) {
+		try {
+			root.getCanonicalPath();
+			URLConnection.getFileNameMap().getContentTypeFor(config.getDefaultPage());
+			File defaultPage = new File(root, config.getDefaultPage());
+			if (defaultPage.canRead()) {
+				Files.readAllBytes(defaultPage.toPath());
+			}
+		} catch (IOException e) {
+			excLogger.log(Level.WARNING, e.toString());
 		}
 	}
 
 	public static void checkLines(String filename) throws IOException {
 	    long lines = 0;
 	    String line;
+	    if (!new File(filename).isFile()) {
+	    	return; // nothing logged yet, or the log directory was removed under us: nothing to trim
+	    }
 
 	    try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
 	        while ((line = reader.readLine()) != null) {
@@ -0,0 +1,140 @@
+/*
+LatencyHistogram.java is the latency histogram shared by LoadGenerator and ServerStats.
+
+Values are microseconds in log-linear buckets: exact below 2 * 2^subBits, then 2^subBits sub-buckets per power of
+two, so a percentile is never more than 1 / 2^subBits too high. The layout (Buckets) is separate from the counts,
+because the two users count differently:
+ - LoadGenerator gives each worker thread its own LatencyHistogram (plain longs, no synchronization) and merges them
+   with add() at the end, using 7 sub-bits (under 1% error).
+ - ServerStats is written to by every request thread at once, so it keeps its counts in an AtomicLongArray sized
+   by Buckets and asks Buckets for percentiles over the difference of two snapshots, using 3 sub-bits (12.5%).
+Both are fixed size, so recording never allocates.
+*/
+public class LatencyHistogram {
+	private final Buckets buckets;
+	private final long[] counts;
+	private long total;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	/**
+	 * @param subBits log2 of the sub-buckets per power of two
+	 */
+	public LatencyHistogram(int subBits) {
+		this.buckets = new Buckets(subBits);
+		this.counts = new long[buckets.size()];
+	}
+
+	void record(long micros) {
+		long value = Math.max(0, micros);
+		counts[buckets.index(value)]++;
+		total++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds the counts of another histogram with the same sub-bits into this one.
+	 */
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		total += other.total;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	long percentile(double p) {
+		if (total == 0) {
+			return 0;
+		}
+		return Math.min(buckets.percentile(counts, null, total, p), max);
+	}
+
+	long min() {
+		return total == 0 ? 0 : min;
+	}
+
+	long max() {
+		return max;
+	}
+
+	double mean() {
+		return total == 0 ? 0 : (double) sum / total;
+	}
+
+	/**
+	 * The bucket layout for one number of sub-bits: which bucket a value falls in, and back.
+	 */
+	public static class Buckets {
+		private static final int MAX_EXPONENT = 40; // ~12.7 days; anything longer is clamped
+		private final int subBits;
+		private final int subCount;
+		private final int linear;
+		private final int size;
+
+		/**
+		 * @param subBits log2 of the sub-buckets per power of two
+		 */
+		public Buckets(int subBits) {
+			this.subBits = subBits;
+			this.subCount = 1 << subBits;
+			this.linear = subCount * 2;
+			this.size = linear + (MAX_EXPONENT - subBits) * subCount;
+		}
+
+		/**
+		 * @return the number of buckets
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return the bucket the given value (in microseconds) is counted in
+		 */
+		public int index(long value) {
+			if (value < linear) {
+				return (int) Math.max(0, value);
+			}
+			int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+			int sub = (int) (Math.min(value >> (exponent - subBits), 2 * subCount - 1) - subCount);
+			return linear + (exponent - subBits - 1) * subCount + sub;
+		}
+
+		/** Highest value that falls in the given bucket. */
+		public long upperBound(int index) {
+			if (index < linear) {
+				return index;
+			}
+			int exponent = (index - linear) / subCount + subBits + 1;
+			long sub = (index - linear) % subCount;
+			return ((subCount + sub + 1) << (exponent - subBits)) - 1;
+		}
+
+		/**
+		 * <h3>percentile</h3>
+		 *
+		 * @param counts  count per bucket
+		 * @param earlier earlier counts of the same buckets to subtract, or null to use counts as they are
+		 * @param total   the sum of counts (minus earlier); must be positive
+		 * @param p       the percentile as a fraction, e.g. 0.99
+		 * @return the upper bound of the bucket that p of the counted values fall in or below
+		 */
+		public long percentile(long[] counts, long[] earlier, long total, double p) {
+			long rank = Math.max(1, (long) Math.ceil(p * total));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += earlier == null ? counts[i] : counts[i] - earlier[i];
+				if (seen >= rank) {
+					return upperBound(i);
+				}
+			}
+			return upperBound(counts.length - 1);
+		}
+	}
+}
@@ -0,0 +1,585 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.*;
+
+/*
+LoadGenerator.java drives a running HttpsServer over TLS and reports throughput, error rate and latency
+percentiles as JSON or CSV, so load tests can be compared run to run (and from scripts).
+
+Run it from the same jar as the server:
+    java -cp APP_RunServer.jar LoadGenerator --port 443 --concurrency 16 --duration 30
+    java -cp APP_RunServer.jar LoadGenerator --rate 500 --mix get:80,head:10,post:10 --format csv
+
+Two modes:
+ - Closed loop (default): each of --concurrency workers sends its next request as soon as the previous
+   response is complete. Measures the throughput ceiling.
+ - Constant arrival rate (--rate N requests/sec): requests are scheduled at fixed intervals regardless of
+   how fast the server answers. Latency is measured from each request's *scheduled* start, so a stalled
+   server is charged for the requests that queued up behind the stall (coordinated-omission correction).
+   The uncorrected service time is reported alongside. Nothing is sent once the duration is up: slots the
+   workers never got to are reported as "missed", so a server that cannot keep up shows a throughput below
+   --rate and a missed count instead of a run that overstays its duration.
+Throughput is completed requests over the real measured window, from the end of the warm-up until the last
+measured response arrived.
+*/
+public class LoadGenerator {
+
+	enum RequestType { GET, HEAD, POST }
+
+	public static void main(String[] args) throws Exception {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(Options.USAGE);
+			System.exit(2);
+			return;
+		}
+		Report report = new LoadGenerator(options).run();
+		String output = options.format.equals("csv") ? report.toCsv() : report.toJson();
+		if (options.outFile != null) {
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(options.outFile), StandardCharsets.UTF_8)) {
+				writer.write(output);
+			}
+		} else {
+			System.out.print(output);
+		}
+		System.err.printf(Locale.ROOT, "%d requests, %.1f req/s, %.3f%% errors, %d missed, p99 %d us%n", report.requests,
+				report.throughput(), report.errorRate() * 100, report.missed, report.latency.percentile(0.99));
+	}
+
+	private final Options options;
+	private final SSLSocketFactory socketFactory;
+
+	public LoadGenerator(Options options) throws Exception {
+		this.options = options;
+		this.socketFactory = createSocketFactory(options);
+	}
+
+	/**
+	 * <h3>run</h3>
+	 *
+	 * <p>
+	 * Runs the warm-up and measurement phases on --concurrency worker threads and merges their results.
+	 * </p>
+	 *
+	 * @return the merged report for the measurement phase
+	 * @throws InterruptedException - If interrupted while waiting for the workers
+	 */
+	public Report run() throws InterruptedException {
+		long start = System.nanoTime();
+		long measureStart = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+		long end = measureStart + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+		AtomicLong nextTicket = new AtomicLong();
+
+		Worker[] workers = new Worker[options.concurrency];
+		Thread[] threads = new Thread[options.concurrency];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(start, measureStart, end, nextTicket);
+			threads[i] = new Thread(workers[i], "load-" + i);
+			threads[i].start();
+		}
+		Report report = new Report(options);
+		for (int i = 0; i < workers.length; i++) {
+			threads[i].join();
+			report.merge(workers[i].report);
+		}
+		report.elapsedNanos = Math.max(1, Math.max(report.lastDoneNanos, end) - measureStart);
+		if (options.rate > 0) {
+			long intervalNanos = (long) (1e9 / options.rate);
+			long scheduled = slotsBefore(end, start, intervalNanos) - slotsBefore(measureStart, start, intervalNanos);
+			report.missed = Math.max(0, scheduled - report.requests);
+		}
+		return report;
+	}
+
+	/** Number of constant-rate slots scheduled before the given time. */
+	private static long slotsBefore(long time, long start, long intervalNanos) {
+		return (time - start + intervalNanos - 1) / intervalNanos;
+	}
+
+	private class Worker implements Runnable {
+		private final long start;
+		private final long measureStart;
+		private final long end;
+		private final AtomicLong nextTicket;
+		private final Report report = new Report(options);
+		private SSLSocket socket;
+		private InputStream in;
+		private OutputStream out;
+
+		Worker(long start, long measureStart, long end, AtomicLong nextTicket) {
+			this.start = start;
+			this.measureStart = measureStart;
+			this.end = end;
+			this.nextTicket = nextTicket;
+		}
+
+		@Override
+		public void run() {
+			long intervalNanos = options.rate > 0 ? (long) (1e9 / options.rate) : 0;
+			while (true) {
+				long intended;
+				if (intervalNanos > 0) {
+					// Constant arrival rate: claim the next slot in the global schedule and wait for it.
+					// If we are already late, send immediately; the lateness is charged to the latency.
+					intended = start + nextTicket.getAndIncrement() * intervalNanos;
+					if (intended >= end) {
+						break;
+					}
+					long wait = intended - System.nanoTime();
+					if (wait > 0) {
+						sleepNanos(wait);
+					}
+					if (System.nanoTime() >= end) {
+						break; // too far behind to send this slot in time; run() counts it as missed
+					}
+				} else {
+					intended = System.nanoTime();
+					if (intended >= end) {
+						break;
+					}
+				}
+
+				RequestType type = options.pickRequest();
+				long sendStart = System.nanoTime();
+				int status = -1;
+				long bytes = 0;
+				String error = null;
+				try {
+					long[] result = exchange(type);
+					status = (int) result[0];
+					bytes = result[1];
+				} catch (IOException e) {
+					error = e.getClass().getName();
+					closeConnection(true);
+				}
+				long done = System.nanoTime();
+				if (intended >= measureStart) {
+					report.lastDoneNanos = done;
+					report.record(type, status, error, bytes, (done - intended) / 1000, (done - sendStart) / 1000);
+				}
+			}
+			closeConnection(false);
+		}
+
+		/** Sends one request and reads the full response. Returns {status, bytes received}. */
+		private long[] exchange(RequestType type) throws IOException {
+			if (socket == null) {
+				socket = (SSLSocket) socketFactory.createSocket(options.host, options.port);
+				socket.setSoTimeout(options.timeoutSeconds * 1000);
+				socket.setTcpNoDelay(true);
+				socket.startHandshake();
+				in = new BufferedInputStream(socket.getInputStream());
+				out = new BufferedOutputStream(socket.getOutputStream());
+			}
+			out.write(options.requestBytes(type));
+			out.flush();
+
+			// Response head: read up to the blank line
+			ByteArrayOutputStream head = new ByteArrayOutputStream(256);
+			int matched = 0;
+			while (matched < 4) {
+				int b = in.read();
+				if (b == -1) {
+					throw new EOFException("Connection closed before the response head was complete");
+				}
+				head.write(b);
+				matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+			}
+			String[] lines = head.toString("US-ASCII").split("\r\n");
+			String[] statusLine = lines[0].split(" ");
+			if (statusLine.length < 2) {
+				throw new IOException("Malformed status line: " + lines[0]);
+			}
+			int status;
+			try {
+				status = Integer.parseInt(statusLine[1]);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed status line: " + lines[0]);
+			}
+			long contentLength = -1;
+			boolean keepAlive = statusLine[0].equals("HTTP/1.1");
+			for (int i = 1; i < lines.length; i++) {
+				int colon = lines[i].indexOf(':');
+				if (colon < 0) {
+					continue;
+				}
+				String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+				String value = lines[i].substring(colon + 1).trim();
+				if (name.equals("content-length")) {
+					contentLength = Long.parseLong(value);
+				} else if (name.equals("connection")) {
+					keepAlive = value.equalsIgnoreCase("keep-alive");
+				}
+			}
+
+			// Body: Content-Length bytes, or until the server closes the connection
+			long bodyBytes = 0;
+			if (type != RequestType.HEAD) {
+				byte[] buffer = new byte[16384];
+				while (contentLength < 0 || bodyBytes < contentLength) {
+					int max = contentLength < 0 ? buffer.length : (int) Math.min(buffer.length, contentLength - bodyBytes);
+					int n = in.read(buffer, 0, max);
+					if (n == -1) {
+						if (contentLength >= 0) {
+							throw new EOFException("Connection closed after " + bodyBytes + " of " + contentLength + " body bytes");
+						}
+						keepAlive = false;
+						break;
+					}
+					bodyBytes += n;
+				}
+			}
+			if (!options.reuse || !keepAlive || contentLength < 0) {
+				closeConnection(!options.reuse);
+			}
+			return new long[] {status, head.size() + bodyBytes};
+		}
+
+		/**
+		 * Closes the current connection. With invalidate, the TLS session is dropped too, so the next
+		 * connection pays for a full handshake instead of resuming.
+		 */
+		private void closeConnection(boolean invalidate) {
+			if (socket == null) {
+				return;
+			}
+			if (invalidate) {
+				socket.getSession().invalidate();
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing left to clean up
+			}
+			socket = null;
+		}
+	}
+
+	private static void sleepNanos(long nanos) {
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * <h3>createSocketFactory</h3>
+	 *
+	 * <p>
+	 * Trusts the certificates in --truststore when given (e.g. RootDir/mykey.keystore). Otherwise trusts any
+	 * certificate: this is a local load tool pointed at a self-signed test server, not a general client.
+	 * </p>
+	 */
+	private static SSLSocketFactory createSocketFactory(Options options) throws Exception {
+		TrustManager[] trustManagers;
+		if (options.truststore != null) {
+			KeyStore trustStore = KeyStore.getInstance("JKS");
+			try (InputStream in = new FileInputStream(options.truststore)) {
+				trustStore.load(in, options.storepass.toCharArray());
+			}
+			TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
+			trustManagerFactory.init(trustStore);
+			trustManagers = trustManagerFactory.getTrustManagers();
+		} else {
+			trustManagers = new TrustManager[] { new X509TrustManager() {
+				public void checkClientTrusted(X509Certificate[] chain, String authType) {
+				}
+
+				public void checkServerTrusted(X509Certificate[] chain, String authType) {
+				}
+
+				public X509Certificate[] getAcceptedIssuers() {
+					return new X509Certificate[0];
+				}
+			} };
+		}
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(null, trustManagers, null);
+		return sslContext.getSocketFactory();
+	}
+
+	/**
+	 * Command-line options. Every flag takes a value: --name value.
+	 */
+	static class Options {
+		static final String USAGE = "Usage: java -cp APP_RunServer.jar LoadGenerator [options]\n"
+				+ "  --host localhost        --port 443\n"
+				+ "  --concurrency 16        worker threads (closed loop) / max in-flight requests (open loop)\n"
+				+ "  --rate 0                requests/sec for constant-arrival-rate mode; 0 = closed loop\n"
+				+ "  --duration 30           measured seconds\n"
+				+ "  --warmup 5              seconds run before measuring\n"
+				+ "  --reuse true            keep connections open when the server allows it and resume TLS sessions;\n"
+				+ "                          false = new connection and full handshake per request\n"
+				+ "  --mix get:100           request mix weights, e.g. get:80,head:10,post:10\n"
+				+ "  --get-path /index.html  --head-path /index.html\n"
+				+ "  --post-path <path>      PHP script to POST to; required when --mix has post (no default: the server\n"
+				+ "                          ships no stand-in, and POSTs to a missing script only measure 404s)\n"
+				+ "  --post-body name=load&comment=test\n"
+				+ "  --timeout 10            socket read timeout in seconds\n"
+				+ "  --truststore <file>     --storepass <password>  (default: trust any certificate)\n"
+				+ "  --format json|csv       --out <file> (default: stdout)";
+
+		String host = "localhost";
+		int port = 443;
+		int concurrency = 16;
+		double rate = 0;
+		int durationSeconds = 30;
+		int warmupSeconds = 5;
+		boolean reuse = true;
+		int[] mixWeights = {100, 0, 0};
+		String getPath = "/index.html";
+		String headPath = "/index.html";
+		String postPath;
+		String postBody = "name=load&comment=test";
+		int timeoutSeconds = 10;
+		String truststore;
+		String storepass = "mypassword";
+		String format = "json";
+		String outFile;
+		private byte[][] requests;
+
+		static Options parse(String[] args) {
+			Options options = new Options();
+			if (args.length % 2 != 0) {
+				throw new IllegalArgumentException("Every option needs a value");
+			}
+			for (int i = 0; i < args.length; i += 2) {
+				String value = args[i + 1];
+				try {
+					switch (args[i]) {
+					case "--host": options.host = value; break;
+					case "--port": options.port = Integer.parseInt(value); break;
+					case "--concurrency": options.concurrency = Integer.parseInt(value); break;
+					case "--rate": options.rate = Double.parseDouble(value); break;
+					case "--duration": options.durationSeconds = Integer.parseInt(value); break;
+					case "--warmup": options.warmupSeconds = Integer.parseInt(value); break;
+					case "--reuse": options.reuse = Boolean.parseBoolean(value); break;
+					case "--mix": options.mixWeights = parseMix(value); break;
+					case "--get-path": options.getPath = value; break;
+					case "--head-path": options.headPath = value; break;
+					case "--post-path": options.postPath = value; break;
+					case "--post-body": options.postBody = value; break;
+					case "--timeout": options.timeoutSeconds = Integer.parseInt(value); break;
+					case "--truststore": options.truststore = value; break;
+					case "--storepass": options.storepass = value; break;
+					case "--format": options.format = value; break;
+					case "--out": options.outFile = value; break;
+					default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad number for " + args[i] + ": " + value);
+				}
+			}
+			if (options.concurrency < 1 || options.durationSeconds < 1 || options.warmupSeconds < 0 || options.rate < 0) {
+				throw new IllegalArgumentException("concurrency and duration must be positive; warmup and rate non-negative");
+			}
+			if (options.mixWeights[RequestType.POST.ordinal()] > 0 && options.postPath == null) {
+				throw new IllegalArgumentException("--mix includes post, so --post-path must name a PHP script on the server");
+			}
+			if (!options.format.equals("json") && !options.format.equals("csv")) {
+				throw new IllegalArgumentException("--format must be json or csv");
+			}
+			options.requests = new byte[][] {
+				options.buildRequest("GET", options.getPath, null),
+				options.buildRequest("HEAD", options.headPath, null),
+				options.postPath == null ? null : options.buildRequest("POST", options.postPath, options.postBody) };
+			return options;
+		}
+
+		private static int[] parseMix(String mix) {
+			int[] weights = new int[3];
+			for (String part : mix.split(",")) {
+				String[] pair = part.split(":");
+				if (pair.length != 2) {
+					throw new IllegalArgumentException("Bad --mix entry: " + part);
+				}
+				int weight = Integer.parseInt(pair[1].trim());
+				try {
+					weights[RequestType.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = weight;
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Unknown request type in --mix: " + pair[0]);
+				}
+			}
+			if (weights[0] + weights[1] + weights[2] <= 0) {
+				throw new IllegalArgumentException("--mix needs at least one positive weight");
+			}
+			return weights;
+		}
+
+		private byte[] buildRequest(String method, String path, String body) {
+			StringBuilder request = new StringBuilder()
+					.append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+					.append("Host: ").append(host).append("\r\n")
+					.append("User-Agent: LoadGenerator\r\n")
+					.append("Connection: ").append(reuse ? "keep-alive" : "close").append("\r\n");
+			if (body != null) {
+				request.append("Content-Type: application/x-www-form-urlencoded\r\n")
+						.append("Content-Length: ").append(body.getBytes(StandardCharsets.US_ASCII).length).append("\r\n");
+			}
+			request.append("\r\n");
+			if (body != null) {
+				request.append(body);
+			}
+			return request.toString().getBytes(StandardCharsets.US_ASCII);
+		}
+
+		RequestType pickRequest() {
+			int roll = ThreadLocalRandom.current().nextInt(mixWeights[0] + mixWeights[1] + mixWeights[2]);
+			for (RequestType type : RequestType.values()) {
+				roll -= mixWeights[type.ordinal()];
+				if (roll < 0) {
+					return type;
+				}
+			}
+			return RequestType.GET;
+		}
+
+		byte[] requestBytes(RequestType type) {
+			return requests[type.ordinal()];
+		}
+	}
+
+	/**
+	 * Results of a run (or of one worker, before merging).
+	 */
+	static class Report {
+		private static final int HISTOGRAM_SUB_BITS = 7; // exact below 256us, then under 1% error
+		private final Options options;
+		long requests;
+		long errors;
+		long bytesReceived;
+		/** Constant-rate slots in the measured window that were never sent because the duration ran out. */
+		long missed;
+		long lastDoneNanos;
+		long elapsedNanos;
+		final long[] requestsByType = new long[RequestType.values().length];
+		final Map<String, Long> statusCounts = new TreeMap<>();
+		final Map<String, Long> errorCounts = new TreeMap<>();
+		/** Latency from the intended start; equal to service time in closed-loop mode. */
+		final LatencyHistogram latency = new LatencyHistogram(HISTOGRAM_SUB_BITS);
+		final LatencyHistogram serviceTime = new LatencyHistogram(HISTOGRAM_SUB_BITS);
+
+		Report(Options options) {
+			this.options = options;
+		}
+
+		void record(RequestType type, int status, String error, long bytes, long latencyMicros, long serviceMicros) {
+			requests++;
+			requestsByType[type.ordinal()]++;
+			bytesReceived += bytes;
+			latency.record(latencyMicros);
+			serviceTime.record(serviceMicros);
+			if (error != null) {
+				errors++;
+				errorCounts.merge(error, 1L, Long::sum);
+			} else {
+				statusCounts.merge(Integer.toString(status), 1L, Long::sum);
+				if (status >= 400) {
+					errors++;
+				}
+			}
+		}
+
+		void merge(Report other) {
+			requests += other.requests;
+			errors += other.errors;
+			bytesReceived += other.bytesReceived;
+			lastDoneNanos = Math.max(lastDoneNanos, other.lastDoneNanos);
+			for (int i = 0; i < requestsByType.length; i++) {
+				requestsByType[i] += other.requestsByType[i];
+			}
+			other.statusCounts.forEach((k, v) -> statusCounts.merge(k, v, Long::sum));
+			other.errorCounts.forEach((k, v) -> errorCounts.merge(k, v, Long::sum));
+			latency.add(other.latency);
+			serviceTime.add(other.serviceTime);
+		}
+
+		double throughput() {
+			return requests / (elapsedNanos / 1e9);
+		}
+
+		double errorRate() {
+			return requests == 0 ? 0 : (double) errors / requests;
+		}
+
+		private static final double[] PERCENTILES = {0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 0.9999};
+
+		String toJson() {
+			StringBuilder json = new StringBuilder("{\n");
+			json.append("  \"mode\": \"").append(options.rate > 0 ? "constant-rate" : "closed-loop").append("\",\n");
+			json.append("  \"targetRate\": ").append(fmt(options.rate)).append(",\n");
+			json.append("  \"concurrency\": ").append(options.concurrency).append(",\n");
+			json.append("  \"connectionReuse\": ").append(options.reuse).append(",\n");
+			json.append("  \"durationSeconds\": ").append(fmt(elapsedNanos / 1e9)).append(",\n");
+			json.append("  \"requests\": ").append(requests).append(",\n");
+			json.append("  \"requestsByType\": {");
+			for (RequestType type : RequestType.values()) {
+				json.append(type.ordinal() == 0 ? "" : ", ").append('"').append(type).append("\": ").append(requestsByType[type.ordinal()]);
+			}
+			json.append("},\n");
+			json.append("  \"errors\": ").append(errors).append(",\n");
+			json.append("  \"errorRate\": ").append(fmt(errorRate())).append(",\n");
+			json.append("  \"throughputRps\": ").append(fmt(throughput())).append(",\n");
+			json.append("  \"missed\": ").append(missed).append(",\n");
+			json.append("  \"bytesReceived\": ").append(bytesReceived).append(",\n");
+			json.append("  \"statusCounts\": ").append(jsonMap(statusCounts)).append(",\n");
+			json.append("  \"errorCounts\": ").append(jsonMap(errorCounts)).append(",\n");
+			json.append("  \"latencyMicros\": ").append(jsonPercentiles(latency)).append(",\n");
+			json.append("  \"serviceTimeMicros\": ").append(jsonPercentiles(serviceTime)).append("\n");
+			return json.append("}\n").toString();
+		}
+
+		/** One row per percentile, then summary rows, so the table can be pasted straight into a sheet. */
+		String toCsv() {
+			StringBuilder csv = new StringBuilder("metric,latency_us,service_time_us\n");
+			for (double p : PERCENTILES) {
+				csv.append('p').append(fmt(p * 100)).append(',').append(latency.percentile(p)).append(',')
+						.append(serviceTime.percentile(p)).append('\n');
+			}
+			csv.append("max,").append(latency.max()).append(',').append(serviceTime.max()).append('\n');
+			csv.append("mean,").append(fmt(latency.mean())).append(',').append(fmt(serviceTime.mean())).append('\n');
+			csv.append("\nmetric,value\n");
+			csv.append("requests,").append(requests).append('\n');
+			csv.append("errors,").append(errors).append('\n');
+			csv.append("error_rate,").append(fmt(errorRate())).append('\n');
+			csv.append("throughput_rps,").append(fmt(throughput())).append('\n');
+			csv.append("missed,").append(missed).append('\n');
+			csv.append("bytes_received,").append(bytesReceived).append('\n');
+			return csv.toString();
+		}
+
+		private static String jsonPercentiles(LatencyHistogram histogram) {
+			StringBuilder json = new StringBuilder("{\"min\": ").append(histogram.min());
+			for (double p : PERCENTILES) {
+				json.append(", \"p").append(fmt(p * 100)).append("\": ").append(histogram.percentile(p));
+			}
+			return json.append(", \"max\": ").append(histogram.max()).append(", \"mean\": ").append(fmt(histogram.mean()))
+					.append('}').toString();
+		}
+
+		private static String jsonMap(Map<String, Long> map) {
+			StringBuilder json = new StringBuilder("{");
+			for (Map.Entry<String, Long> entry : map.entrySet()) {
+				json.append(json.length() == 1 ? "" : ", ").append('"').append(entry.getKey()).append("\": ").append(entry.getValue());
+			}
+			return json.append('}').toString();
+		}
+
+		private static String fmt(double value) {
+			String text = String.format(Locale.ROOT, "%.4f", value);
+			return text.contains(".") ? text.replaceAll("0+$", "").replaceAll("\\.$", "") : text;
+		}
+	}
+}
@@ -11,6 +11,11 @@ Kevin Leger: GUI components creation, functions for Login button, RunServer, sto
              and logic for pleasing GUI taking into account all user operations on the GUI
 Ryan Brennan: Functions for eraseComments and loadServer
 Nate Czarnecki: Logging username and password to correct file
+
+Anything that touches the disk or waits on something (reading Users.csv, the log files, copying the comments file,
+opening the browser) runs on a background thread through runInBackground(), never on the Swing event thread, so the
+window stays responsive even when the server is busy. Results come back to the event thread with
+SwingUtilities.invokeLater, since Swing components may only be changed there.
 */
 
 // Importing all necassary libraries
@@ -22,10 +27,13 @@ import java.awt.event.ActionListener;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,19 +57,31 @@ public class LoginGUI implements ActionListener {
     private static JButton loadServerButton;
     private static JButton eraseCommentsButton;
     private static JLabel serverStatusLabel;
+    private static JFrame frame;
+    private static ServerDashboard dashboard;
 
-    // boolean to keep track of what state the server is in. Used for the socket loop in the Server code
+    // boolean to keep track of what state the server is in
     public static boolean runServer = false;
     // creating a new instance of the server
     private static HttpsServer server = new HttpsServer();
 
+    // One background thread for all blocking GUI work. A single thread keeps the work in click order,
+    // e.g. a new registration is written to Users.csv before a following login reads it.
+    private static final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GUI background");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The User Login logger, with its file handler attached once on first use
+    private static Logger userLoginLogger;
+
 
     public static void main(String[] args) {
 
         // The panel is what on the frame of the GUI, and the frame is the external casing for the GUI
         // Setting the size and name of the frame, as well as having the "x" on the GUI stop the program
         JPanel panel = new JPanel();
-        JFrame frame = new JFrame("User Login");
+        frame = new JFrame("User Login");
         frame.setSize(300, 345);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.add(panel);
@@ -155,6 +175,12 @@ public class LoginGUI implements ActionListener {
             }});
         panel.add(loadServerButton);
 
+        // The live server statistics, shown (and the window made taller for them) once a server is started
+        dashboard = new ServerDashboard();
+        dashboard.setBounds(10, 290, 265, 130);
+        dashboard.setVisible(false);
+        panel.add(dashboard);
+
         // Show the UI Panel!!!
         frame.setVisible(true);
     }
@@ -171,6 +197,8 @@ public class LoginGUI implements ActionListener {
         eraseCommentsButton.setVisible(false);
         loadServerButton.setVisible(false);
         stopServer();
+        dashboard.setVisible(false);
+        frame.setSize(300, 345);
         success.setVisible(false);
         RegisterGUI registerGUI = new RegisterGUI();
         registerGUI.showRegistrationGUI();
@@ -180,6 +208,7 @@ public class LoginGUI implements ActionListener {
     Displays all of the labels and buttons that are supposed to be displayed after the server is started.
     changes the runServer boolean to true (VERY IMPORTANT)
     tries to create a new thread of the HttpsServer from the orignal initialization and run it
+    (the server thread does all the slow start-up work, so this returns right away) and points the dashboard at it
     If it isnt able to make the instance of the server, log it in exceptions logger
     */
     private static void runServer() {
@@ -189,7 +218,13 @@ public class LoginGUI implements ActionListener {
         serverStatusLabel.setVisible(true);
         runServer = true;
         try{
+            // A server instance runs once, so every start gets a fresh one
+            server.stop();
+            server = new HttpsServer();
             new Thread(server).start();
+            dashboard.watch(server);
+            dashboard.setVisible(true);
+            frame.setSize(300, 485);
         } catch(Exception E){
             HttpsServer.excLogger.log(Level.WARNING, E.toString());
         }
@@ -197,68 +232,88 @@ public class LoginGUI implements ActionListener {
 
     /*
     Remove all of the labels and buttons to maintain a pleasing interface
-    Set the runServer boolean to false, so the server will stop accepting new connections.
+    Set the runServer boolean to false and stop the server: it stops accepting new connections right away
+    and lets the requests already in progress finish in the background.
     */
     private static void stopServer() {
         serverStatusLabel.setText("Server stopped");
         stopServerButton.setVisible(false);
         loadServerButton.setVisible(false);
         runServer = false;
+        server.stop();
     }
 
     // Runs the PHP script to erase all fo the comments on the chicken blog post
     // It it runs into an error, log it with the exceptions logger
     private static void eraseComments(){
-        try {
-            Files.copy(new File("RootDir/media/RyanMedia/RyanCommentsDefault.html").toPath(), new File("RootDir/media/RyanMedia/RyanComments.html").toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (Exception e){
-            HttpsServer.excLogger.log(Level.WARNING, e.toString());
-        }
+        runInBackground(() -> {
+            try {
+                Files.copy(new File("RootDir/media/RyanMedia/RyanCommentsDefault.html").toPath(), new File("RootDir/media/RyanMedia/RyanComments.html").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e){
+                HttpsServer.excLogger.log(Level.WARNING, e.toString());
+            }
+        });
     }
 
     // Get the URI for localhost and automatically direct the user to a new tab of their default browser 
     // with the localhost address
     // It it runs into an error, log it with the exceptions logger
     private static void loadServer() {
-        try {
-            Desktop.getDesktop().browse(new URI("https://localhost"));
-        } catch (Exception e){
-            HttpsServer.excLogger.log(Level.WARNING, e.toString());
-        }
+        runInBackground(() -> {
+            try {
+                Desktop.getDesktop().browse(new URI("https://localhost"));
+            } catch (Exception e){
+                HttpsServer.excLogger.log(Level.WARNING, e.toString());
+            }
+        });
+    }
+
+    // Hands blocking work to the GUI background thread (also used by RegisterGUI)
+    static void runInBackground(Runnable task) {
+        background.execute(task);
     }
 
     /*
-    Reads from the .csv file and checks to see if the username and passwqors that were submitted match up with
-    anything from the .csv file
+    Takes the username and password that were typed in and checks them against the .csv file on the background
+    thread. The Login button is disabled until the answer comes back so a second click cannot start a second check.
     */
     public void actionPerformed(ActionEvent e) {
         // get the information from the two textfields and store them in the username and password variables
         success.setVisible(true);
+        success.setText("Checking...");
+        button.setEnabled(false);
         String username = userText.getText();
         String password = passwordText.getText();
 
+        runInBackground(() -> {
+            try {
+                boolean found = checkCredentials(username, password);
+                SwingUtilities.invokeLater(() -> showLoginResult(found));
+            // An exception logger just in case any issue arises with this function
+            } catch (Exception E) {
+                HttpsServer.excLogger.log(Level.WARNING, E.toString());
+                SwingUtilities.invokeLater(() -> {
+                    success.setText("");
+                    button.setEnabled(true);
+                });
+            }
+        });
+    }
+
+    /*
+    Runs on the background thread.
+    Reads from the .csv file and checks to see if the username and passwqors that were submitted match up with
+    anything from the .csv file, and logs the login if they do
+    */
+    private static boolean checkCredentials(String username, String password) throws IOException {
         // get the filePath to the .csv file
         String filePath = "RootDir/Users.csv";
 
-        // Initializes a boolean to see if we have found a match from the .csv file
-        boolean found = false;
-
-        // All logging intialization for the User_Login logger
-        Logger userLogger = Logger.getLogger("User Login");
-        FileHandler fhUser;
-        SimpleFormatter formatter = new SimpleFormatter();
-
         // Creating a new Bufferedreader from the filePath so we are able to read the .csv file one
         // line at a time
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String line;
 
-            //More initializtion for the logging handler
-            fhUser = new FileHandler("RootDir/Logs/user_login.txt", true);
-            fhUser.setFormatter(formatter);
-            userLogger.addHandler(fhUser);
-            userLogger.setUseParentHandlers(false);
-
             // while loop that will go through every single line of the .csv file
             while ((line = reader.readLine()) != null) {
                 // Split the line into fields using a comma as the delimiter
@@ -266,34 +321,47 @@ public class LoginGUI implements ActionListener {
                 String csvUser = fields[0];
                 String csvPass = fields[1].trim();
 
-                // Making sure the file can be written to for logging the username and password
-                String fileDir = "RootDir/Logs/user_login.txt";
-				HttpsServer.checkLines(fileDir);
-
                 // Checks if the current line from the csv file matches with the info that the user input
-                // If it does, do everything needed to the GUI, log the username and password, and break out of the loop
+                // If it does, log the username and password and stop looking
                 if (csvUser.equals(username) && csvPass.equals(password)) {
-                    success.setText("Login successful :)");
-                    found = true;
-                    eraseCommentsButton.setVisible(true);
-                    startServerButton.setVisible(true);
-                    userLogger.log(Level.INFO, "User has logged in to server. Username: " + username + " Password: " + password);
-                    break;
+                    // Making sure the file can be written to for logging the username and password
+                    String fileDir = "RootDir/Logs/user_login.txt";
+                    HttpsServer.checkLines(fileDir);
+                    userLoginLogger().log(Level.INFO, "User has logged in to server. Username: " + username + " Password: " + password);
+                    return true;
                 }
-                
             }
-        // If we got through the entire file without finding a matching username and password, display an unsuccessful login
-        if (!found) {
+        }
+        return false;
+    }
+
+    // All logging intialization for the User_Login logger, done the first time someone logs in
+    private static Logger userLoginLogger() throws IOException {
+        if (userLoginLogger == null) {
+            Logger userLogger = Logger.getLogger("User Login");
+            FileHandler fhUser = new FileHandler("RootDir/Logs/user_login.txt", true);
+            fhUser.setFormatter(new SimpleFormatter());
+            userLogger.addHandler(fhUser);
+            userLogger.setUseParentHandlers(false);
+            userLoginLogger = userLogger;
+        }
+        return userLoginLogger;
+    }
+
+    // Back on the event thread: do everything needed to the GUI for a successful or unsuccessful login
+    private static void showLoginResult(boolean found) {
+        button.setEnabled(true);
+        if (found) {
+            success.setText("Login successful :)");
+            eraseCommentsButton.setVisible(true);
+            startServerButton.setVisible(true);
+        } else {
+            // If we got through the entire file without finding a matching username and password, display an unsuccessful login
             success.setText("Login unsuccessful :(");
             eraseCommentsButton.setVisible(false);
             startServerButton.setVisible(false);
             serverStatusLabel.setVisible(false);
         }
-        // An exception logger just in case any issue arises with this function
-        } catch (Exception E) {
-            HttpsServer.excLogger.log(Level.WARNING, e.toString());
-        }
-
     }
 
 }
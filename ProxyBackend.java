@@ -0,0 +1,252 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/*
+ProxyBackend.java is one server behind ReverseProxy: an HttpsServer instance (https://host:port) or a plain-HTTP
+worker (http://host:port, e.g. an HttpsServer started with --tls false). It keeps:
+ - a pool of idle keep-alive connections (used when the backend's responses allow reuse; HttpsServer answers
+   HTTP/1.0 and closes, so against it the pool only saves the full TLS handshake through session resumption),
+ - the number of requests in flight, for least-connections routing,
+ - health-check state (active checks) and outlier ejection state (passive, from real traffic).
+*/
+public class ProxyBackend {
+	private static final int MAX_IDLE_CONNECTIONS = 32;
+	private static final long MAX_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+	private static final long EJECTION_MEMORY_NANOS = TimeUnit.MINUTES.toNanos(5);
+	private static final int HEALTH_THRESHOLD = 2; // consecutive checks needed to flip healthy/unhealthy
+
+	private final String name;
+	private final String host;
+	private final int port;
+	private final SSLSocketFactory tlsFactory; // null for plain HTTP
+	private final int readTimeoutMillis;
+	private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger active = new AtomicInteger();
+
+	// Active health checks (one checker thread writes these)
+	private volatile boolean healthy = true;
+	private int healthStreak;
+
+	// Passive outlier ejection
+	private int consecutiveFailures;
+	private int ejections;
+	private volatile long ejectedUntilNanos = System.nanoTime(); // not ejected
+
+	/**
+	 * <h3>ProxyBackend Constructor</h3>
+	 *
+	 * @param url               http://host:port or https://host:port
+	 * @param tlsFactory        socket factory trusting the backend's certificate, used for https backends (may be null
+	 *                          when url is http)
+	 * @param readTimeoutMillis how long to wait for the backend to answer before failing the request
+	 * @throws IllegalArgumentException - If url is not an http(s)://host:port URL
+	 */
+	public ProxyBackend(String url, SSLSocketFactory tlsFactory, int readTimeoutMillis) {
+		URI uri = URI.create(url);
+		if (uri.getHost() == null || uri.getPort() < 0
+				|| !("http".equals(uri.getScheme()) || "https".equals(uri.getScheme()))) {
+			throw new IllegalArgumentException("Backend must look like https://host:port or http://host:port: " + url);
+		}
+		this.name = url;
+		this.host = uri.getHost();
+		this.port = uri.getPort();
+		this.tlsFactory = uri.getScheme().equals("https") ? tlsFactory : null;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * An open connection to this backend, with buffered streams.
+	 */
+	public class Connection {
+		final Socket socket;
+		final InputStream in;
+		final OutputStream out;
+		final boolean reused;
+		private long idleSinceNanos;
+
+		private Connection(Socket socket, boolean reused) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+			this.reused = reused;
+		}
+
+		private Connection(Connection pooled) {
+			this.socket = pooled.socket;
+			this.in = pooled.in;
+			this.out = pooled.out;
+			this.reused = true;
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing to clean up
+			}
+		}
+	}
+
+	/**
+	 * <h3>acquire</h3>
+	 *
+	 * <p>
+	 * Takes the most recently used idle connection (the one least likely to have been closed by the backend),
+	 * or opens a new one.
+	 * </p>
+	 *
+	 * @return a connection ready for one request
+	 * @throws IOException - If a new connection cannot be opened
+	 */
+	public Connection acquire() throws IOException {
+		Connection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (System.nanoTime() - pooled.idleSinceNanos < MAX_IDLE_NANOS && !pooled.socket.isClosed()) {
+				return new Connection(pooled);
+			}
+			pooled.close();
+		}
+		return connect();
+	}
+
+	/**
+	 * <h3>connect</h3>
+	 *
+	 * @return a new, unpooled connection (also used by the health checker)
+	 * @throws IOException - If the backend cannot be reached or the TLS handshake fails
+	 */
+	public Connection connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(readTimeoutMillis);
+			if (tlsFactory != null) {
+				SSLSocket tlsSocket = (SSLSocket) tlsFactory.createSocket(socket, host, port, true);
+				tlsSocket.startHandshake();
+				socket = tlsSocket;
+			}
+			return new Connection(socket, false);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * <h3>release</h3>
+	 *
+	 * @param connection the connection a request has finished with
+	 * @param reusable   true if the response was fully read and the backend allows keep-alive
+	 */
+	public void release(Connection connection, boolean reusable) {
+		if (reusable && idle.size() < MAX_IDLE_CONNECTIONS) {
+			connection.idleSinceNanos = System.nanoTime();
+			idle.offerFirst(connection);
+		} else {
+			connection.close();
+		}
+	}
+
+	/**
+	 * @return true if the backend passes health checks and is not currently ejected
+	 */
+	public boolean isAvailable() {
+		return healthy && System.nanoTime() - ejectedUntilNanos >= 0;
+	}
+
+	public int activeRequests() {
+		return active.get();
+	}
+
+	void requestStarted() {
+		active.incrementAndGet();
+	}
+
+	void requestFinished() {
+		active.decrementAndGet();
+	}
+
+	/**
+	 * <h3>recordResult</h3>
+	 *
+	 * <p>
+	 * Feeds passive outlier detection. After ejectAfter consecutive failures (connect failures, read timeouts or
+	 * 5xx responses) the backend is ejected for ejectSeconds, doubling with every repeat ejection within 5 minutes
+	 * (up to 8x), unless canEject says too many backends are already out.
+	 * </p>
+	 *
+	 * @param success      whether the proxied request succeeded
+	 * @param ejectAfter   consecutive failures that trigger an ejection
+	 * @param ejectSeconds base ejection time
+	 * @param canEject     whether ejecting one more backend is allowed right now
+	 */
+	synchronized void recordResult(boolean success, int ejectAfter, int ejectSeconds, boolean canEject) {
+		if (success) {
+			consecutiveFailures = 0;
+			return;
+		}
+		consecutiveFailures++;
+		if (consecutiveFailures >= ejectAfter && canEject && isAvailable()) {
+			if (ejections > 0 && System.nanoTime() - ejectedUntilNanos > EJECTION_MEMORY_NANOS) {
+				ejections = 0; // behaved for a while since the last ejection: start the back-off over
+			}
+			long seconds = (long) ejectSeconds << Math.min(ejections, 3);
+			ejections++;
+			consecutiveFailures = 0;
+			ejectedUntilNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+			closeIdle();
+			HttpsServer.excLogger.log(Level.WARNING, "Ejected backend " + name + " for " + seconds + " s");
+			System.out.println("Ejected backend " + name + " for " + seconds + " s");
+		}
+	}
+
+	/**
+	 * <h3>recordHealthCheck</h3>
+	 *
+	 * @param passed whether the latest active health check passed
+	 */
+	void recordHealthCheck(boolean passed) {
+		if (passed == healthy) {
+			healthStreak = 0;
+			return;
+		}
+		if (++healthStreak >= HEALTH_THRESHOLD) {
+			healthy = passed;
+			healthStreak = 0;
+			if (!passed) {
+				closeIdle();
+			}
+			System.out.println("Backend " + name + " is now " + (passed ? "healthy" : "unhealthy"));
+		}
+	}
+
+	private void closeIdle() {
+		Connection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			connection.close();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
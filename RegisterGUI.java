@@ -65,7 +65,7 @@ public class RegisterGUI implements ActionListener {
         registrationFrame.setVisible(true);
     }
 
-    // Function that writes to the csv file
+    // Function that writes to the csv file (on the GUI background thread, see LoginGUI.runInBackground)
     public void actionPerformed(ActionEvent e) {
         // Gets the username and password from the user
         String newUsername = newUsernameText.getText();
@@ -74,13 +74,15 @@ public class RegisterGUI implements ActionListener {
         // gets the path to the file
         String filePath = "RootDir/Users.csv";
 
-        // create a new PrintWriter object and write the new username and password in .csv format
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filePath, true))) {
-            writer.println(newUsername + "," + newPassword);
-            successLabel.setText("Registration successful :)");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            successLabel.setText("Error during registration");
-        }
+        LoginGUI.runInBackground(() -> {
+            // create a new PrintWriter object and write the new username and password in .csv format
+            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath, true))) {
+                writer.println(newUsername + "," + newPassword);
+                SwingUtilities.invokeLater(() -> successLabel.setText("Registration successful :)"));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> successLabel.setText("Error during registration"));
+            }
+        });
     }
 }
@@ -0,0 +1,218 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.EventType;
+
+/*
+RequestTrace.java times the phases of one request, for the slow-request log and Java Flight Recorder.
+
+HttpsServer.dispatch and ThreadHTTP call mark(phase) as each phase finishes; the time since the previous mark (or since
+the connection was accepted) is charged to that phase. The phases of a request are sequential, so the marks add up to
+the whole request:
+    accepted -> LOG_CHECK -> QUEUE_WAIT -> TLS_HANDSHAKE -> REQUEST_LINE -> HEADERS -> PATH_CHECK -> READ_FILE -> SEND_RESPONSE
+with READ_BODY, CACHE_LOOKUP, PHP_SPAWN and PHP_OUTPUT instead of READ_FILE for PHP requests. LOG_CHECK is the log
+size check dispatch does on the accept thread before handing the connection over, kept apart from QUEUE_WAIT because
+it is disk I/O, not a busy pool.
+
+A trace is only active when something will use it: the slow log is on (trace.slowMillis), the request was picked by
+trace.sampleRate, or a JFR recording has the events enabled. An inactive trace returns from every call after one
+branch, so tracing can stay configured in production.
+
+Sampled requests get a random trace ID, sent back to the client as X-Trace-Id and attached to their JFR events and
+slow-log line.
+*/
+public class RequestTrace {
+
+	public enum Phase {
+		LOG_CHECK("log check"),
+		QUEUE_WAIT("queue wait"),
+		TLS_HANDSHAKE("TLS handshake"),
+		REQUEST_LINE("request line"),
+		HEADERS("headers"),
+		PATH_CHECK("path check"),
+		READ_BODY("read body"),
+		CACHE_LOOKUP("cache lookup"),
+		PHP_SPAWN("php spawn"),
+		PHP_OUTPUT("php output"),
+		READ_FILE("read file"),
+		SEND_RESPONSE("send response");
+
+		final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final EventType PHASE_EVENT = EventType.getEventType(ServerEvents.RequestPhase.class);
+	private static final EventType REQUEST_EVENT = EventType.getEventType(ServerEvents.Request.class);
+	private static final RequestTrace INACTIVE = new RequestTrace();
+
+	private final boolean active;
+	private final long slowNanos; // 0 = no slow log
+	private final String traceId; // null unless sampled
+	private final long startNanos;
+	private final long[] phaseNanos;
+	private long lastMarkNanos;
+	private ServerEvents.RequestPhase phaseEvent; // the running JFR event, when phase events are recorded
+	private final ServerEvents.Request requestEvent;
+	private String method = "-";
+	private String path = "-";
+
+	private RequestTrace() {
+		active = false;
+		slowNanos = 0;
+		traceId = null;
+		startNanos = 0;
+		phaseNanos = null;
+		requestEvent = null;
+	}
+
+	private RequestTrace(long slowNanos, String traceId, boolean phaseEvents, boolean requestEvents) {
+		this.active = true;
+		this.slowNanos = slowNanos;
+		this.traceId = traceId;
+		this.startNanos = System.nanoTime();
+		this.lastMarkNanos = startNanos;
+		this.phaseNanos = new long[PHASES.length];
+		if (phaseEvents) {
+			phaseEvent = new ServerEvents.RequestPhase();
+			phaseEvent.begin();
+		}
+		if (requestEvents) {
+			requestEvent = new ServerEvents.Request();
+			requestEvent.begin();
+		} else {
+			requestEvent = null;
+		}
+	}
+
+	/**
+	 * <h3>start</h3>
+	 *
+	 * <p>
+	 * Starts the trace of a connection that has just been accepted.
+	 * </p>
+	 *
+	 * @param sampleRate fraction of requests that get a trace ID (0 for none)
+	 * @param slowMillis requests taking at least this long are written to the slow-request log (0 for no log)
+	 * @return a trace for the connection, inactive if nothing would use it
+	 */
+	public static RequestTrace start(double sampleRate, int slowMillis) {
+		boolean sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+		boolean phaseEvents = PHASE_EVENT.isEnabled();
+		boolean requestEvents = REQUEST_EVENT.isEnabled();
+		if (!sampled && slowMillis <= 0 && !phaseEvents && !requestEvents) {
+			return INACTIVE;
+		}
+		String traceId = sampled ? String.format("%016x", ThreadLocalRandom.current().nextLong()) : null;
+		return new RequestTrace(TimeUnit.MILLISECONDS.toNanos(slowMillis), traceId, phaseEvents, requestEvents);
+	}
+
+	/**
+	 * @return a trace that records nothing
+	 */
+	public static RequestTrace inactive() {
+		return INACTIVE;
+	}
+
+	/**
+	 * <h3>mark</h3>
+	 *
+	 * @param phase the phase that just finished; it is charged the time since the previous mark
+	 */
+	public void mark(Phase phase) {
+		if (!active) {
+			return;
+		}
+		long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] += now - lastMarkNanos;
+		lastMarkNanos = now;
+		if (phaseEvent != null) {
+			phaseEvent.end();
+			if (phaseEvent.shouldCommit()) {
+				phaseEvent.phase = phase.label;
+				phaseEvent.traceId = traceId;
+				phaseEvent.commit();
+			}
+			phaseEvent = new ServerEvents.RequestPhase();
+			phaseEvent.begin();
+		}
+	}
+
+	/**
+	 * <h3>describe</h3>
+	 *
+	 * @param method the request's HTTP method
+	 * @param path   the request's URL
+	 */
+	public void describe(String method, String path) {
+		if (!active) {
+			return;
+		}
+		this.method = method;
+		this.path = path;
+	}
+
+	/**
+	 * @return the trace ID to send back to the client, or null if this request was not sampled
+	 */
+	public String getTraceId() {
+		return traceId;
+	}
+
+	/**
+	 * <h3>finish</h3>
+	 *
+	 * <p>
+	 * Ends the trace: commits the JFR request event and, if the request took at least trace.slowMillis,
+	 * writes its phase breakdown to the slow-request log. Time after the last mark (closing the socket, or
+	 * whatever was cut short by an error) is reported as "other".
+	 * </p>
+	 *
+	 * @param failed true if the request ended with an exception
+	 */
+	public void finish(boolean failed) {
+		if (!active) {
+			return;
+		}
+		long totalNanos = System.nanoTime() - startNanos;
+		if (requestEvent != null) {
+			requestEvent.end();
+			if (requestEvent.shouldCommit()) {
+				requestEvent.method = method;
+				requestEvent.path = path;
+				requestEvent.traceId = traceId;
+				requestEvent.failed = failed;
+				requestEvent.commit();
+			}
+		}
+		if (slowNanos > 0 && totalNanos >= slowNanos) {
+			HttpsServer.logSlowRequest(describeSlowRequest(totalNanos, failed));
+		}
+	}
+
+	private String describeSlowRequest(long totalNanos, boolean failed) {
+		StringBuilder line = new StringBuilder();
+		line.append(formatMillis(totalNanos)).append(' ').append(method).append(' ').append(path);
+		line.append(" trace=").append(traceId == null ? "-" : traceId);
+		if (failed) {
+			line.append(" FAILED");
+		}
+		line.append(" |");
+		long accounted = 0;
+		for (Phase phase : PHASES) {
+			long nanos = phaseNanos[phase.ordinal()];
+			if (nanos > 0) {
+				line.append(' ').append(phase.label).append(' ').append(formatMillis(nanos)).append(',');
+				accounted += nanos;
+			}
+		}
+		line.append(" other ").append(formatMillis(totalNanos - accounted));
+		return line.toString();
+	}
+
+	private static String formatMillis(long nanos) {
+		return String.format("%.1f ms", nanos / 1e6);
+	}
+}
@@ -0,0 +1,255 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/*
+ResponseCache.java caches the output of PHP scripts on routes that opt in (ServerConfig cache.paths), so repeated
+identical dynamic requests are answered without spawning php at all.
+
+An entry is keyed on the script's canonical path and modification time, the HTTP method, and the normalized
+request input (POST body or GET query: parameters sorted, empty ones dropped). Editing a script changes its mtime
+and so misses the old entries, which then age out. Entries live for cache.ttlSeconds and the whole cache is bounded
+to cache.maxMegabytes of output, evicting least recently used entries first. Identical requests that miss at the
+same time share one php run. Only scripts that exit with status 0 are cached.
+
+Only opt in routes whose scripts are idempotent for a given input: a POST that appends a comment must not be cached.
+*/
+public class ResponseCache {
+
+	/**
+	 * The output of one script run, and whether it may be cached.
+	 */
+	public static class Result {
+		final byte[] body;
+		final boolean cacheable;
+
+		public Result(byte[] body, boolean cacheable) {
+			this.body = body;
+			this.cacheable = cacheable;
+		}
+	}
+
+	/**
+	 * Runs the script on a cache miss.
+	 */
+	public interface Loader {
+		Result load() throws IOException;
+	}
+
+	private static class Entry {
+		final byte[] body;
+		final long expiresAtNanos;
+
+		Entry(byte[] body, long expiresAtNanos) {
+			this.body = body;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+
+	private final List<Pattern> routes = new ArrayList<>();
+	private final long ttlNanos;
+	private final long maxBytes;
+	// Access-ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long sizeBytes;
+	private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * <h3>ResponseCache Constructor</h3>
+	 *
+	 * @param routeGlobs URL path patterns that opt in: * matches within one path segment, ** across segments
+	 *                   (e.g. /views/*.php, /reports/**)
+	 * @param ttlSeconds how long an entry is served
+	 * @param maxBytes   upper bound on the total size of cached output
+	 */
+	public ResponseCache(List<String> routeGlobs, int ttlSeconds, long maxBytes) {
+		for (String glob : routeGlobs) {
+			routes.add(globToPattern(glob));
+		}
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param urlPath the request path, without the query string
+	 * @return true if the path is on an opted-in route
+	 */
+	public boolean isCacheable(String urlPath) {
+		for (Pattern route : routes) {
+			if (route.matcher(urlPath).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * <h3>key</h3>
+	 *
+	 * @param script the script that would run
+	 * @param method the HTTP method
+	 * @param input  the POST body or GET query string (may be null)
+	 * @return the cache key for this run
+	 * @throws IOException - If the script's canonical path cannot be resolved
+	 */
+	public static String key(File script, String method, String input) throws IOException {
+		return method + '\0' + script.getCanonicalPath() + '\0' + script.lastModified() + '\0' + normalize(input);
+	}
+
+	/*
+	a=1&c=3&b=2& and b=2&a=1&c=3 are the same request to the script. Parameters are ordered by name only, with a
+	stable sort, so repeated names keep their order: x[]=1&x[]=2 and x[]=2&x[]=1 are different requests.
+	*/
+	private static String normalize(String input) {
+		if (input == null || input.isEmpty()) {
+			return "";
+		}
+		List<String> parameters = new ArrayList<>();
+		for (String parameter : input.split("&")) {
+			if (!parameter.isEmpty()) {
+				parameters.add(parameter);
+			}
+		}
+		parameters.sort(Comparator.comparing(ResponseCache::parameterName)); // List.sort is stable
+		return String.join("&", parameters);
+	}
+
+	private static String parameterName(String parameter) {
+		int equals = parameter.indexOf('=');
+		return equals < 0 ? parameter : parameter.substring(0, equals);
+	}
+
+	/**
+	 * <h3>get</h3>
+	 *
+	 * <p>
+	 * Returns the cached output for key, or runs loader once for all concurrent callers with the same key.
+	 * </p>
+	 *
+	 * @param key    from key()
+	 * @param loader runs the script
+	 * @return the script output
+	 * @throws IOException - If the script could not be run (every coalesced caller sees the same failure)
+	 */
+	public byte[] get(String key, Loader loader) throws IOException {
+		byte[] cached = lookup(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached;
+		}
+		CompletableFuture<byte[]> mine = new CompletableFuture<>();
+		CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, mine);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			return await(running);
+		}
+		try {
+			// Another caller may have stored it between our lookup and claiming the key
+			cached = lookup(key);
+			if (cached != null) {
+				hits.incrementAndGet();
+				mine.complete(cached);
+				return cached;
+			}
+			misses.incrementAndGet();
+			Result result = loader.load();
+			if (result.cacheable) {
+				store(key, result.body);
+			}
+			mine.complete(result.body);
+			return result.body;
+		} catch (IOException | RuntimeException e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, mine);
+		}
+	}
+
+	private static byte[] await(CompletableFuture<byte[]> running) throws IOException {
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for an identical request", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private synchronized byte[] lookup(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+			entries.remove(key);
+			sizeBytes -= entry.body.length;
+			return null;
+		}
+		return entry.body;
+	}
+
+	private synchronized void store(String key, byte[] body) {
+		if (body.length > maxBytes) {
+			return;
+		}
+		Entry previous = entries.remove(key);
+		if (previous != null) {
+			sizeBytes -= previous.body.length;
+		}
+		Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+		while (sizeBytes + body.length > maxBytes && leastRecentlyUsed.hasNext()) {
+			sizeBytes -= leastRecentlyUsed.next().body.length;
+			leastRecentlyUsed.remove();
+		}
+		entries.put(key, new Entry(body, System.nanoTime() + ttlNanos));
+		sizeBytes += body.length;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	private static Pattern globToPattern(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^/]*");
+				}
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,784 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/*
+ReverseProxy.java is a front tier for running several HttpsServer instances (or plain-HTTP workers) as one site.
+It terminates TLS once, with the same keystore setup as HttpsServer, and forwards each request to a backend:
+
+    java -cp APP_RunServer.jar ServerDaemon --port 9001 --tls false
+    java -cp APP_RunServer.jar ServerDaemon --port 9002 --tls false
+    java -cp APP_RunServer.jar ReverseProxy --port 443 --backend http://localhost:9001 --backend http://localhost:9002
+
+Routing is least-connections (default) or consistent-hash on the request path (--routing consistent-hash).
+POSTs under --sticky-paths prefixes always go to the same backend (consistent hash of the prefix), so scripts
+writing a shared file such as RyanComments.html are never run by two backends at once; if that backend goes
+down, every request agrees on the next one.
+
+Backends are checked actively (HEAD --health-path every --health-interval seconds; two results in a row flip
+the state) and passively: --eject-after consecutive failures (connect failures, read timeouts, malformed or 5xx
+responses) eject a backend for --eject-seconds, doubling on repeat, with at most half of the backends ejected at
+a time. Methods the backends do not implement are answered 501 by the proxy itself.
+
+Client connections are kept alive when the client asks for it. Backend connections are pooled and reused when
+the backend allows keep-alive; HttpsServer answers HTTP/1.0 and closes, so for https backends the proxy reuses
+TLS sessions instead. The other ServerConfig options (--config, --keystore, --bind, --max-threads, --drain-seconds...)
+apply to the proxy's own listener. Each client connection holds a thread while open, so raise --max-threads.
+The keystore is only loaded when something needs it: a TLS listener or an https backend.
+*/
+public class ReverseProxy {
+	private static final String USAGE = "Usage: java -cp APP_RunServer.jar ReverseProxy --backend <url> [--backend <url> ...] [options]\n"
+			+ "  --backend <url>              https://host:port (HttpsServer) or http://host:port (plain worker); repeat or comma-separate\n"
+			+ "  --routing <mode>             least-connections (default) or consistent-hash\n"
+			+ "  --sticky-paths <prefixes>    comma-separated path prefixes whose POSTs stick to one backend (default /media/RyanMedia/)\n"
+			+ "  --health-path <path>         path for active health checks (default /index.html)\n"
+			+ "  --health-interval <s>        seconds between health checks (default 5)\n"
+			+ "  --eject-after <n>            consecutive failures before ejecting a backend (default 5)\n"
+			+ "  --eject-seconds <s>          base ejection time (default 30)\n"
+			+ "  --backend-timeout <s>        read timeout for backend responses (default 60)\n"
+			+ ServerConfig.USAGE;
+	private static final int VIRTUAL_NODES = 100;
+	private static final int CLIENT_IDLE_TIMEOUT_MILLIS = 15000;
+	private static final int HEALTH_TIMEOUT_MILLIS = 2000;
+	private static final int MAX_HEAD_BYTES = 64 * 1024;
+	private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+	// What ThreadHTTP answers; it closes the connection on anything else, which must not look like a backend failure
+	private static final Set<String> SUPPORTED_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "POST"));
+	private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList("connection", "keep-alive",
+			"proxy-connection", "te", "trailer", "transfer-encoding", "upgrade", "content-length"));
+
+	enum Routing { LEAST_CONNECTIONS, CONSISTENT_HASH }
+
+	private final ServerConfig config;
+	private final List<String> backendUrls;
+	private final Routing routing;
+	private final List<String> stickyPaths;
+	private final String healthPath;
+	private final int healthIntervalSeconds;
+	private final int ejectAfter;
+	private final int ejectSeconds;
+	private final int backendTimeoutSeconds;
+
+	private final List<ProxyBackend> backends = new ArrayList<>();
+	private final TreeMap<Integer, ProxyBackend> ring = new TreeMap<>();
+	private final Set<Socket> idleClients = ConcurrentHashMap.newKeySet();
+	private volatile boolean running;
+	private ServerSocket listener;
+	private ThreadPoolExecutor threadPool;
+	private ScheduledExecutorService healthChecker;
+
+	public static void main(String[] args) throws Exception {
+		ReverseProxy proxy;
+		try {
+			proxy = fromArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+		try {
+			proxy.start();
+		} catch (Exception e) {
+			HttpsServer.excLogger.log(Level.SEVERE, "Proxy failed to start: " + e);
+			System.err.println("Proxy failed to start: " + e);
+			System.exit(1);
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				proxy.stop();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "proxy-shutdown"));
+	}
+
+	/*
+	Takes the proxy's own flags out of args and hands the rest to ServerConfig.
+	*/
+	private static ReverseProxy fromArgs(String[] args) throws IOException {
+		if (args.length % 2 != 0) {
+			throw new IllegalArgumentException("Every option needs a value");
+		}
+		List<String> backendUrls = new ArrayList<>();
+		Routing routing = Routing.LEAST_CONNECTIONS;
+		List<String> stickyPaths = Collections.singletonList("/media/RyanMedia/");
+		String healthPath = "/index.html";
+		int healthInterval = 5;
+		int ejectAfter = 5;
+		int ejectSeconds = 30;
+		int backendTimeout = 60;
+		List<String> serverArgs = new ArrayList<>();
+		for (int i = 0; i < args.length; i += 2) {
+			String value = args[i + 1];
+			try {
+				switch (args[i]) {
+				case "--backend": backendUrls.addAll(ServerConfig.parseList(value)); break;
+				case "--routing": routing = Routing.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')); break;
+				case "--sticky-paths": stickyPaths = ServerConfig.parseList(value); break;
+				case "--health-path": healthPath = value; break;
+				case "--health-interval": healthInterval = Integer.parseInt(value); break;
+				case "--eject-after": ejectAfter = Integer.parseInt(value); break;
+				case "--eject-seconds": ejectSeconds = Integer.parseInt(value); break;
+				case "--backend-timeout": backendTimeout = Integer.parseInt(value); break;
+				default: serverArgs.add(args[i]); serverArgs.add(value);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad number for " + args[i] + ": " + value);
+			}
+		}
+		if (backendUrls.isEmpty()) {
+			throw new IllegalArgumentException("At least one --backend is required");
+		}
+		if (healthInterval < 1 || ejectAfter < 1 || ejectSeconds < 1 || backendTimeout < 1) {
+			throw new IllegalArgumentException("--health-interval, --eject-after, --eject-seconds and --backend-timeout must be positive");
+		}
+		ServerConfig config = ServerConfig.fromArgs(serverArgs.toArray(new String[0]));
+		return new ReverseProxy(config, backendUrls, routing, stickyPaths, healthPath, healthInterval, ejectAfter,
+				ejectSeconds, backendTimeout);
+	}
+
+	/**
+	 * <h3>ReverseProxy Constructor</h3>
+	 *
+	 * @param config                listener settings: port, keystore, thread cap, drain deadline, TLS on/off
+	 * @param backendUrls           http(s)://host:port of every backend
+	 * @param routing               how non-sticky requests pick a backend
+	 * @param stickyPaths           path prefixes whose POSTs always go to the same backend
+	 * @param healthPath            path requested by active health checks
+	 * @param healthIntervalSeconds seconds between health checks
+	 * @param ejectAfter            consecutive failures before a backend is ejected
+	 * @param ejectSeconds          base ejection time
+	 * @param backendTimeoutSeconds read timeout for backend responses
+	 */
+	public ReverseProxy(ServerConfig config, List<String> backendUrls, Routing routing, List<String> stickyPaths,
+			String healthPath, int healthIntervalSeconds, int ejectAfter, int ejectSeconds, int backendTimeoutSeconds) {
+		this.config = config;
+		this.backendUrls = backendUrls;
+		this.routing = routing;
+		this.stickyPaths = stickyPaths;
+		this.healthPath = healthPath;
+		this.healthIntervalSeconds = healthIntervalSeconds;
+		this.ejectAfter = ejectAfter;
+		this.ejectSeconds = ejectSeconds;
+		this.backendTimeoutSeconds = backendTimeoutSeconds;
+	}
+
+	/**
+	 * <h3>start</h3>
+	 *
+	 * <p>
+	 * Loads the keystore (if TLS is on or a backend is https), builds the backend pools and hash ring, starts
+	 * health checks and starts accepting.
+	 * </p>
+	 *
+	 * @throws Exception - If the keystore cannot be loaded, a backend URL is invalid or the port cannot be bound
+	 */
+	public void start() throws Exception {
+		long startNanos = System.nanoTime();
+		// One SSLContext serves both sides: its key manager terminates client TLS, and its trust manager
+		// (the same keystore) accepts the certificate of HttpsServer backends sharing that keystore.
+		// A plain-HTTP proxy in front of plain-HTTP workers needs neither, so it runs without a keystore.
+		boolean httpsBackends = backendUrls.stream().anyMatch(url -> url.startsWith("https:"));
+		SSLContext sslContext = config.isTlsEnabled() || httpsBackends
+				? HttpsServer.createSslContext(config.getKeystorePath(), config.getKeystorePassword())
+				: null;
+		SSLSocketFactory backendTlsFactory = httpsBackends ? sslContext.getSocketFactory() : null;
+		for (String url : backendUrls) {
+			ProxyBackend backend = new ProxyBackend(url, backendTlsFactory, backendTimeoutSeconds * 1000);
+			backends.add(backend);
+			for (int i = 0; i < VIRTUAL_NODES; i++) {
+				ring.put(hash(url + "#" + i), backend);
+			}
+		}
+
+		threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+		threadPool.setKeepAliveTime(2L, TimeUnit.SECONDS);
+		threadPool.setCorePoolSize(0);
+		threadPool.setMaximumPoolSize(config.getMaxThreads());
+
+		healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "proxy-health");
+			thread.setDaemon(true);
+			return thread;
+		});
+		healthChecker.scheduleWithFixedDelay(this::checkBackends, 0, healthIntervalSeconds, TimeUnit.SECONDS);
+
+		InetAddress bindAddress = InetAddress.getByName(config.getBindAddress());
+		listener = config.isTlsEnabled()
+				? sslContext.getServerSocketFactory().createServerSocket(config.getPort(), 0, bindAddress)
+				: new ServerSocket(config.getPort(), 0, bindAddress);
+		running = true;
+		Thread acceptor = new Thread(this::acceptLoop, "proxy-acceptor");
+		acceptor.start();
+		System.out.println("Proxy is running... Go here: " + (config.isTlsEnabled() ? "https" : "http") + "://localhost:"
+				+ config.getPort() + " -> " + backends + " (" + routing.name().toLowerCase(Locale.ROOT).replace('_', '-')
+				+ ", started in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms)");
+	}
+
+	/**
+	 * <h3>stop</h3>
+	 *
+	 * <p>
+	 * Stops accepting, closes client connections that are idle between requests, and waits up to the drain
+	 * deadline for requests in flight.
+	 * </p>
+	 *
+	 * @throws InterruptedException - If interrupted while waiting
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		try {
+			listener.close();
+		} catch (IOException e) {
+			HttpsServer.excLogger.log(Level.WARNING, e.toString());
+		}
+		healthChecker.shutdownNow();
+		for (Socket client : idleClients) {
+			closeQuietly(client);
+		}
+		threadPool.shutdown();
+		if (!threadPool.awaitTermination(config.getDrainSeconds(), TimeUnit.SECONDS)) {
+			threadPool.shutdownNow();
+		}
+		System.out.println("Proxy is stopped");
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			Socket client;
+			try {
+				client = listener.accept();
+			} catch (IOException e) {
+				if (!running) {
+					break;
+				}
+				HttpsServer.excLogger.log(Level.WARNING, e.toString());
+				continue;
+			}
+			try {
+				threadPool.submit(() -> serveClient(client));
+			} catch (RejectedExecutionException e) {
+				closeQuietly(client);
+				HttpsServer.excLogger.log(Level.WARNING, "Proxy connection rejected, all " + config.getMaxThreads() + " threads are busy");
+			}
+		}
+	}
+
+	/*
+	Serves requests from one client connection until it closes, asks to close, or idles out.
+	*/
+	private void serveClient(Socket client) {
+		try (Socket socket = client) {
+			socket.setSoTimeout(CLIENT_IDLE_TIMEOUT_MILLIS);
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			String clientIp = socket.getInetAddress().getHostAddress();
+			boolean keepAlive = true;
+			boolean first = true;
+			while (keepAlive && running) {
+				HttpHead request;
+				if (!first) {
+					idleClients.add(socket); // between requests: stop() may close it
+				}
+				try {
+					request = HttpHead.read(in);
+				} finally {
+					idleClients.remove(socket);
+				}
+				if (request == null) {
+					break;
+				}
+				first = false;
+				keepAlive = proxyRequest(request, in, out, clientIp);
+			}
+		} catch (SocketTimeoutException e) {
+			// Idle keep-alive connection timed out
+		} catch (IOException e) {
+			if (running) {
+				HttpsServer.excLogger.log(Level.WARNING, e.toString());
+			}
+		}
+	}
+
+	/**
+	 * <h3>proxyRequest</h3>
+	 *
+	 * <p>
+	 * Forwards one request and relays the response. A request is retried once if it was never sent (connect
+	 * failure, or a pooled connection that failed on write), or if it is a GET/HEAD and no response bytes reached
+	 * the client yet. A POST is never sent twice; it always goes out on a new connection, so a pooled connection
+	 * the backend has already closed cannot make it fail.
+	 * </p>
+	 *
+	 * @return true if the client connection can carry another request
+	 */
+	private boolean proxyRequest(HttpHead request, InputStream in, OutputStream out, String clientIp) throws IOException {
+		String[] requestLine = request.startLine.split(" ");
+		if (requestLine.length != 3) {
+			sendError(out, 400, "Bad Request", false);
+			return false;
+		}
+		String method = requestLine[0];
+		String target = requestLine[1];
+		boolean clientKeepAlive = wantsKeepAlive(requestLine[2], request.get("Connection"));
+		if (request.get("Transfer-Encoding") != null) {
+			sendError(out, 411, "Length Required", false);
+			return false;
+		}
+		long contentLength;
+		try {
+			contentLength = request.get("Content-Length") == null ? 0 : Long.parseLong(request.get("Content-Length").trim());
+		} catch (NumberFormatException e) {
+			sendError(out, 400, "Bad Request", false);
+			return false;
+		}
+		if (contentLength < 0 || contentLength > MAX_BODY_BYTES) {
+			sendError(out, 413, "Payload Too Large", false);
+			return false;
+		}
+		byte[] body = new byte[(int) contentLength];
+		new DataInputStream(in).readFully(body);
+		if (!SUPPORTED_METHODS.contains(method)) {
+			sendError(out, 501, "Not Implemented", clientKeepAlive);
+			return clientKeepAlive;
+		}
+
+		int queryStart = target.indexOf('?');
+		String path = queryStart < 0 ? target : target.substring(0, queryStart);
+		String stickyKey = method.equals("POST") ? stickyPrefixFor(path) : null;
+		String routingKey = stickyKey != null ? stickyKey : path;
+		byte[] forwarded = buildBackendRequest(request, method, target, body, clientIp);
+		boolean idempotent = method.equals("GET") || method.equals("HEAD");
+
+		Set<ProxyBackend> excluded = new HashSet<>();
+		for (int attempt = 0; ; attempt++) {
+			ProxyBackend backend = choose(routingKey, stickyKey != null, excluded);
+			if (backend == null) {
+				sendError(out, 503, "Service Unavailable", clientKeepAlive);
+				return clientKeepAlive;
+			}
+			backend.requestStarted();
+			ProxyBackend.Connection connection = null;
+			boolean sent = false;
+			boolean closedUnanswered = false;
+			boolean relaying = false;
+			try {
+				connection = idempotent ? backend.acquire() : backend.connect();
+				connection.out.write(forwarded);
+				connection.out.flush();
+				sent = true;
+				HttpHead response = HttpHead.read(connection.in);
+				if (response == null) {
+					closedUnanswered = true; // EOF before a single byte of response
+					throw new EOFException("Backend " + backend + " closed the connection without a response");
+				}
+				// Checked before anything goes to the client, so a malformed head can still be answered with a 502
+				int status = statusOf(response);
+				long length = contentLengthOf(response);
+				relaying = true;
+				boolean[] reuse = relayResponse(method, response, status, length, connection.in, out, clientKeepAlive,
+						requestLine[2]);
+				backend.release(connection, reuse[0]);
+				backend.recordResult(status < 500, ejectAfter, ejectSeconds, canEject());
+				return reuse[1];
+			} catch (IOException e) {
+				// A pooled connection the backend had already closed fails on write, or reads EOF before any byte.
+				// Anything else, a read timeout in particular, means the backend got the request and may still act on it.
+				boolean staleConnection = connection != null && connection.reused && (!sent || closedUnanswered);
+				if (connection != null) {
+					connection.close();
+				}
+				if (!staleConnection) {
+					// Only failures a client cannot provoke count toward ejection: the backend could not be reached,
+					// stopped answering or answered garbage. A backend closing on a request it did not like is the
+					// request's fault.
+					if (connection == null || e instanceof SocketTimeoutException
+							|| e instanceof MalformedResponseException) {
+						backend.recordResult(false, ejectAfter, ejectSeconds, canEject());
+					}
+					excluded.add(backend);
+				}
+				if (relaying) {
+					throw e; // part of the response already went out; all we can do is drop the client
+				}
+				if (attempt >= 1 || (sent && !idempotent)) { // a POST that went out is never sent again
+					HttpsServer.excLogger.log(Level.WARNING, "Backend " + backend + " failed: " + e);
+					sendError(out, 502, "Bad Gateway", clientKeepAlive);
+					return clientKeepAlive;
+				}
+			} finally {
+				backend.requestFinished();
+			}
+		}
+	}
+
+	/*
+	Request as sent to the backend: HTTP/1.1 with keep-alive, hop-by-hop headers dropped, X-Forwarded-* added.
+	Content-Length is written last: ThreadHTTP mis-reads the name of the first header after the request line.
+	*/
+	private byte[] buildBackendRequest(HttpHead request, String method, String target, byte[] body, String clientIp) {
+		StringBuilder head = new StringBuilder(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+		String forwardedFor = clientIp;
+		for (int i = 0; i < request.names.size(); i++) {
+			String name = request.names.get(i);
+			String lower = name.toLowerCase(Locale.ROOT);
+			if (lower.equals("x-forwarded-for")) {
+				forwardedFor = request.values.get(i) + ", " + clientIp;
+			} else if (!HOP_BY_HOP.contains(lower) && !lower.equals("x-forwarded-proto")) {
+				head.append(name).append(": ").append(request.values.get(i)).append("\r\n");
+			}
+		}
+		head.append("X-Forwarded-For: ").append(forwardedFor).append("\r\n");
+		head.append("X-Forwarded-Proto: ").append(config.isTlsEnabled() ? "https" : "http").append("\r\n");
+		head.append("Connection: keep-alive\r\n");
+		if (body.length > 0 || method.equals("POST")) {
+			head.append("Content-Length: ").append(body.length).append("\r\n");
+		}
+		head.append("\r\n");
+		byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+		byte[] message = Arrays.copyOf(headBytes, headBytes.length + body.length);
+		System.arraycopy(body, 0, message, headBytes.length, body.length);
+		return message;
+	}
+
+	/*
+	Copies the backend response to the client. Returns {backend connection reusable, client connection reusable}.
+	*/
+	private static boolean[] relayResponse(String method, HttpHead response, int status, long length,
+			InputStream backendIn, OutputStream out, boolean clientKeepAlive, String clientVersion) throws IOException {
+		String[] statusLine = response.startLine.split(" ", 2);
+		String transferEncoding = response.get("Transfer-Encoding");
+		boolean chunked = transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked");
+		boolean noBody = method.equals("HEAD") || status / 100 == 1 || status == 204 || status == 304;
+		// HTTP/1.0 clients cannot take chunked framing, so they get the body de-chunked and the connection closed
+		boolean relayChunks = chunked && !noBody && clientVersion.equals("HTTP/1.1");
+		boolean delimited = noBody || length >= 0 || chunked;
+		boolean backendReusable = delimited && wantsKeepAlive(statusLine[0], response.get("Connection"));
+		boolean keepClient = clientKeepAlive && (noBody || length >= 0 || relayChunks);
+
+		StringBuilder head = new StringBuilder("HTTP/1.1 ").append(statusLine.length > 1 ? statusLine[1] : status).append("\r\n");
+		for (int i = 0; i < response.names.size(); i++) {
+			if (!HOP_BY_HOP.contains(response.names.get(i).toLowerCase(Locale.ROOT))) {
+				head.append(response.names.get(i)).append(": ").append(response.values.get(i)).append("\r\n");
+			}
+		}
+		if (length >= 0 && !chunked) {
+			head.append("Content-Length: ").append(length).append("\r\n");
+		}
+		if (relayChunks) {
+			head.append("Transfer-Encoding: chunked\r\n");
+		}
+		head.append("Connection: ").append(keepClient ? "keep-alive" : "close").append("\r\n\r\n");
+		out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+		if (!noBody) {
+			if (chunked) {
+				copyChunked(backendIn, out, relayChunks);
+			} else if (length >= 0) {
+				copy(backendIn, out, length);
+			} else {
+				copy(backendIn, out, Long.MAX_VALUE); // body ends when the backend closes
+			}
+		}
+		out.flush();
+		return new boolean[] {backendReusable, keepClient};
+	}
+
+	private static void copy(InputStream in, OutputStream out, long length) throws IOException {
+		byte[] buffer = new byte[16384];
+		long remaining = length;
+		while (remaining > 0) {
+			int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (n == -1) {
+				if (length == Long.MAX_VALUE) {
+					return;
+				}
+				throw new EOFException("Backend closed the connection mid-body");
+			}
+			out.write(buffer, 0, n);
+			remaining -= n;
+		}
+	}
+
+	private static void copyChunked(InputStream in, OutputStream out, boolean keepFraming) throws IOException {
+		while (true) {
+			String sizeLine = readLine(in);
+			int extension = sizeLine.indexOf(';');
+			long size = parseLength(extension < 0 ? sizeLine : sizeLine.substring(0, extension), 16, "chunk size");
+			if (keepFraming) {
+				out.write((sizeLine + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			}
+			if (size == 0) {
+				// Trailers, up to the blank line
+				String trailer;
+				do {
+					trailer = readLine(in);
+					if (keepFraming) {
+						out.write((trailer + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+					}
+				} while (!trailer.isEmpty());
+				return;
+			}
+			copy(in, out, size);
+			readLine(in); // CRLF after the chunk data
+			if (keepFraming) {
+				out.write('\r');
+				out.write('\n');
+			}
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1) {
+				throw new EOFException("Backend closed the connection mid-body");
+			}
+			if (b != '\r') {
+				line.append((char) b);
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * <h3>choose</h3>
+	 *
+	 * @param key      path or sticky prefix, for hash routing
+	 * @param sticky   true to route by consistent hash regardless of the routing mode
+	 * @param excluded backends that already failed this request
+	 * @return an available backend, or null if there is none
+	 */
+	private ProxyBackend choose(String key, boolean sticky, Set<ProxyBackend> excluded) {
+		if (sticky || routing == Routing.CONSISTENT_HASH) {
+			// Walk the ring clockwise from the key's position to the first available backend
+			SortedMap<Integer, ProxyBackend> tail = ring.tailMap(hash(key));
+			for (ProxyBackend backend : tail.values()) {
+				if (backend.isAvailable() && !excluded.contains(backend)) {
+					return backend;
+				}
+			}
+			for (ProxyBackend backend : ring.values()) {
+				if (backend.isAvailable() && !excluded.contains(backend)) {
+					return backend;
+				}
+			}
+			return null;
+		}
+		// Least connections, starting at a random backend so ties spread out
+		ProxyBackend best = null;
+		int start = ThreadLocalRandom.current().nextInt(backends.size());
+		for (int i = 0; i < backends.size(); i++) {
+			ProxyBackend backend = backends.get((start + i) % backends.size());
+			if (backend.isAvailable() && !excluded.contains(backend)
+					&& (best == null || backend.activeRequests() < best.activeRequests())) {
+				best = backend;
+			}
+		}
+		return best;
+	}
+
+	private String stickyPrefixFor(String path) {
+		for (String prefix : stickyPaths) {
+			if (path.startsWith(prefix)) {
+				return prefix;
+			}
+		}
+		return null;
+	}
+
+	/*
+	At most half of the backends may be out of rotation at once, so a shared failure (say, a bad deploy)
+	cannot eject everything.
+	*/
+	private boolean canEject() {
+		int unavailable = 0;
+		for (ProxyBackend backend : backends) {
+			if (!backend.isAvailable()) {
+				unavailable++;
+			}
+		}
+		return unavailable + 1 <= backends.size() / 2;
+	}
+
+	private void checkBackends() {
+		for (ProxyBackend backend : backends) {
+			boolean passed = false;
+			ProxyBackend.Connection connection = null;
+			try {
+				connection = backend.connect();
+				connection.socket.setSoTimeout(HEALTH_TIMEOUT_MILLIS);
+				connection.out.write(("HEAD " + healthPath + " HTTP/1.1\r\nHost: " + backend.getHost()
+						+ "\r\nUser-Agent: ReverseProxy-health\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				connection.out.flush();
+				HttpHead response = HttpHead.read(connection.in);
+				passed = response != null && statusOf(response) >= 200 && statusOf(response) < 400;
+			} catch (IOException | RuntimeException e) {
+				passed = false;
+			} finally {
+				if (connection != null) {
+					connection.close();
+				}
+			}
+			backend.recordHealthCheck(passed);
+		}
+	}
+
+	private static boolean wantsKeepAlive(String version, String connectionHeader) {
+		if (connectionHeader != null) {
+			String value = connectionHeader.toLowerCase(Locale.ROOT);
+			if (value.contains("close")) {
+				return false;
+			}
+			if (value.contains("keep-alive")) {
+				return true;
+			}
+		}
+		return version.equals("HTTP/1.1");
+	}
+
+	private static int statusOf(HttpHead response) throws IOException {
+		String[] parts = response.startLine.split(" ");
+		try {
+			return Integer.parseInt(parts[1]);
+		} catch (RuntimeException e) {
+			throw new MalformedResponseException("Malformed status line: " + response.startLine);
+		}
+	}
+
+	/** @return the response's Content-Length, or -1 if it has none */
+	private static long contentLengthOf(HttpHead response) throws IOException {
+		String lengthHeader = response.get("Content-Length");
+		return lengthHeader == null ? -1 : parseLength(lengthHeader, 10, "Content-Length");
+	}
+
+	private static long parseLength(String text, int radix, String what) throws IOException {
+		try {
+			long value = Long.parseLong(text.trim(), radix);
+			if (value >= 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new MalformedResponseException("Malformed " + what + " from backend: " + text);
+	}
+
+	/*
+	A backend response that cannot be parsed. It is an IOException so it takes the same path as a broken
+	connection (connection closed, 502 or retry), and it counts toward ejection since the client cannot cause it.
+	*/
+	private static class MalformedResponseException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		MalformedResponseException(String message) {
+			super(message);
+		}
+	}
+
+	/*
+	Murmur3's 32-bit finalizer over String.hashCode: similar names ("host#1", "host#2") land far apart on the ring.
+	*/
+	private static int hash(String key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private void sendError(OutputStream out, int status, String reason, boolean keepAlive) throws IOException {
+		String body = new StringBuilder("<HTML>\r\n")
+				.append("<HEAD><TITLE>").append(reason).append("</TITLE>\r\n</HEAD>\r\n")
+				.append("<BODY>")
+				.append("<H1>HTTP Error ").append(status).append(": ").append(reason).append("</H1>\r\n")
+				.append("</BODY></HTML>\r\n").toString();
+		String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+				+ "Content-Type: text/html; charset=utf-8\r\n"
+				+ "Content-Length: " + body.length() + "\r\n"
+				+ "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+		out.write((head + body).getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	/**
+	 * The start line and headers of an HTTP request or response.
+	 */
+	static class HttpHead {
+		final String startLine;
+		final List<String> names = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
+
+		private HttpHead(String startLine) {
+			this.startLine = startLine;
+		}
+
+		/**
+		 * Reads up to and including the blank line that ends the head.
+		 *
+		 * @return the parsed head, or null if the stream ended before the first byte
+		 */
+		static HttpHead read(InputStream in) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+			int newlines = 0; // consecutive line ends, ignoring '\r'
+			while (newlines < 2) {
+				int b = in.read();
+				if (b == -1) {
+					if (bytes.size() == 0) {
+						return null;
+					}
+					throw new EOFException("Connection closed inside the HTTP head");
+				}
+				if (bytes.size() >= MAX_HEAD_BYTES) {
+					throw new IOException("HTTP head larger than " + MAX_HEAD_BYTES + " bytes");
+				}
+				bytes.write(b);
+				if (b == '\n') {
+					newlines++;
+				} else if (b != '\r') {
+					newlines = 0;
+				}
+			}
+			String[] lines = bytes.toString("ISO-8859-1").split("\r?\n");
+			HttpHead head = new HttpHead(lines[0]);
+			for (int i = 1; i < lines.length; i++) {
+				int colon = lines[i].indexOf(':');
+				if (colon > 0) {
+					head.names.add(lines[i].substring(0, colon).trim());
+					head.values.add(lines[i].substring(colon + 1).trim());
+				}
+			}
+			return head;
+		}
+
+		String get(String name) {
+			for (int i = 0; i < names.size(); i++) {
+				if (names.get(i).equalsIgnoreCase(name)) {
+					return values.get(i);
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,365 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/*
+ServerConfig.java holds everything HttpsServer used to hard-code (port, keystore, thread cap, RootDir...).
+
+Values come from, in increasing priority:
+ 1) the defaults below (the same values the GUI has always used),
+ 2) a .properties file given with --config <file>,
+ 3) command-line flags, e.g. --port 8443 --root-dir /srv/RootDir
+
+Example server.properties:
+    port=443
+    bind.address=
+    keystore.path=RootDir/mykey.keystore
+    keystore.password=mypassword
+    threads.max=20
+    root.dir=RootDir
+    log.dir=
+    default.page=index.html
+    shutdown.drainSeconds=30
+    tls.enabled=true
+    cache.paths=
+    cache.ttlSeconds=60
+    cache.maxMegabytes=16
+    trace.sampleRate=0
+    trace.slowMillis=0
+
+tls.enabled=false serves plain HTTP, for worker instances behind ReverseProxy (which terminates TLS).
+bind.address is the local address to listen on. Left empty it is every interface with TLS on, but only loopback
+(127.0.0.1) with TLS off, so an unencrypted worker cannot be reached from other machines around the proxy; set it
+(e.g. to a private interface address, or 0.0.0.0) when the proxy runs on another host.
+log.dir is where the server logs go. Left empty it is root.dir/Logs as of the first start, and it stays there across
+reloads even when root.dir moves to a new snapshot; it is created if missing.
+cache.paths is a comma-separated list of URL patterns (e.g. /views/*.php,/reports/**) whose PHP output is cached
+by ResponseCache; empty (the default) caches nothing.
+trace.sampleRate (0 to 1) is the fraction of requests given a trace ID, and trace.slowMillis writes requests that
+take at least that long to Logs/slow_requests.txt with their phase breakdown (0 turns either off). See RequestTrace.java.
+*/
+public class ServerConfig {
+	public static final String USAGE = "Options (each overrides the same key in --config):\n"
+			+ "  --config <file>              .properties file with the keys below\n"
+			+ "  --port <n>                   port                   (default 443)\n"
+			+ "  --bind <address>             bind.address           (default all interfaces; 127.0.0.1 when --tls false)\n"
+			+ "  --keystore <file>            keystore.path          (default RootDir/mykey.keystore)\n"
+			+ "  --keystore-password <pw>     keystore.password\n"
+			+ "  --max-threads <n>            threads.max            (default 20)\n"
+			+ "  --root-dir <dir>             root.dir               (default RootDir)\n"
+			+ "  --log-dir <dir>              log.dir                (default <root.dir>/Logs at first start)\n"
+			+ "  --default-page <file>        default.page           (default index.html)\n"
+			+ "  --drain-seconds <n>          shutdown.drainSeconds  (default 30)\n"
+			+ "  --tls <true|false>           tls.enabled            (default true; false = plain HTTP worker)\n"
+			+ "  --cache-paths <p1,p2>        cache.paths            (default none; PHP routes whose output is cached)\n"
+			+ "  --cache-ttl <seconds>        cache.ttlSeconds       (default 60)\n"
+			+ "  --cache-max-mb <n>           cache.maxMegabytes     (default 16)\n"
+			+ "  --trace-sample-rate <0..1>   trace.sampleRate       (default 0; fraction of requests given a trace ID)\n"
+			+ "  --trace-slow-ms <n>          trace.slowMillis       (default 0 = off; log requests slower than this)";
+
+	private int port = 443;
+	private String bindAddress; // null = depends on tlsEnabled, see getBindAddress()
+	private String keystorePath = "RootDir/mykey.keystore";
+	private String keystorePassword = "mypassword";
+	private int maxThreads = 20;
+	private String rootDir = "RootDir";
+	private String logDir; // null = rootDir/Logs, see getLogDir()
+	private String defaultPage = "index.html";
+	private int drainSeconds = 30;
+	private boolean tlsEnabled = true;
+	private List<String> cachePaths = Collections.emptyList();
+	private int cacheTtlSeconds = 60;
+	private int cacheMaxMegabytes = 16;
+	private double traceSampleRate = 0;
+	private int traceSlowMillis = 0;
+
+	/**
+	 * <h3>fromArgs</h3>
+	 *
+	 * <p>
+	 * Builds a config from the command line: loads --config first (wherever it appears), then applies the other flags.
+	 * </p>
+	 *
+	 * @param args the command-line arguments, as --flag value pairs
+	 * @return the resulting configuration
+	 * @throws IOException - If the config file cannot be read
+	 * @throws IllegalArgumentException - If a flag is unknown or a value is malformed
+	 */
+	public static ServerConfig fromArgs(String[] args) throws IOException {
+		if (args.length % 2 != 0) {
+			throw new IllegalArgumentException("Every option needs a value");
+		}
+		ServerConfig config = new ServerConfig();
+		for (int i = 0; i < args.length; i += 2) {
+			if (args[i].equals("--config")) {
+				config.load(args[i + 1]);
+			}
+		}
+		for (int i = 0; i < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--config": break;
+			case "--port": config.set("port", value); break;
+			case "--bind": config.set("bind.address", value); break;
+			case "--keystore": config.set("keystore.path", value); break;
+			case "--keystore-password": config.set("keystore.password", value); break;
+			case "--max-threads": config.set("threads.max", value); break;
+			case "--root-dir": config.set("root.dir", value); break;
+			case "--log-dir": config.set("log.dir", value); break;
+			case "--default-page": config.set("default.page", value); break;
+			case "--drain-seconds": config.set("shutdown.drainSeconds", value); break;
+			case "--tls": config.set("tls.enabled", value); break;
+			case "--cache-paths": config.set("cache.paths", value); break;
+			case "--cache-ttl": config.set("cache.ttlSeconds", value); break;
+			case "--cache-max-mb": config.set("cache.maxMegabytes", value); break;
+			case "--trace-sample-rate": config.set("trace.sampleRate", value); break;
+			case "--trace-slow-ms": config.set("trace.slowMillis", value); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * @param args the command-line arguments, as --flag value pairs
+	 * @return the file given with --config, or null if there is none
+	 */
+	public static String configFile(String[] args) {
+		String file = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--config")) {
+				file = args[i + 1];
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * <h3>load</h3>
+	 *
+	 * <p>
+	 * Applies every known key found in a .properties file. Unknown keys are rejected so typos do not go unnoticed.
+	 * </p>
+	 *
+	 * @param file path of the .properties file
+	 * @throws IOException - If the file cannot be read
+	 */
+	public void load(String file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		for (String key : properties.stringPropertyNames()) {
+			set(key, properties.getProperty(key).trim());
+		}
+	}
+
+	private void set(String key, String value) {
+		try {
+			switch (key) {
+			case "port": setPort(Integer.parseInt(value)); break;
+			case "bind.address": setBindAddress(value.isEmpty() ? null : value); break;
+			case "keystore.path": setKeystorePath(value); break;
+			case "keystore.password": setKeystorePassword(value); break;
+			case "threads.max": setMaxThreads(Integer.parseInt(value)); break;
+			case "root.dir": setRootDir(value); break;
+			case "log.dir": setLogDir(value.isEmpty() ? null : value); break;
+			case "default.page": setDefaultPage(value); break;
+			case "shutdown.drainSeconds": setDrainSeconds(Integer.parseInt(value)); break;
+			case "tls.enabled": setTlsEnabled(parseBoolean(key, value)); break;
+			case "cache.paths": setCachePaths(parseList(value)); break;
+			case "cache.ttlSeconds": setCacheTtlSeconds(Integer.parseInt(value)); break;
+			case "cache.maxMegabytes": setCacheMaxMegabytes(Integer.parseInt(value)); break;
+			case "trace.sampleRate": setTraceSampleRate(Double.parseDouble(value)); break;
+			case "trace.slowMillis": setTraceSlowMillis(Integer.parseInt(value)); break;
+			default: throw new IllegalArgumentException("Unknown config key: " + key);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad number for " + key + ": " + value);
+		}
+	}
+
+	private static boolean parseBoolean(String key, String value) {
+		if (!value.equals("true") && !value.equals("false")) {
+			throw new IllegalArgumentException("Expected true or false for " + key + ": " + value);
+		}
+		return Boolean.parseBoolean(value);
+	}
+
+	static List<String> parseList(String value) {
+		List<String> items = new ArrayList<>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty()) {
+				items.add(item.trim());
+			}
+		}
+		return items;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		if (port < 0 || port > 65535) {
+			throw new IllegalArgumentException("port out of range: " + port);
+		}
+		this.port = port;
+	}
+
+	/**
+	 * @return the address to listen on: bind.address if set, otherwise 0.0.0.0 (every interface) with TLS on and
+	 * 127.0.0.1 with TLS off
+	 */
+	public String getBindAddress() {
+		if (bindAddress != null) {
+			return bindAddress;
+		}
+		return tlsEnabled ? "0.0.0.0" : "127.0.0.1";
+	}
+
+	public void setBindAddress(String bindAddress) {
+		this.bindAddress = bindAddress;
+	}
+
+	public String getKeystorePath() {
+		return keystorePath;
+	}
+
+	public void setKeystorePath(String keystorePath) {
+		this.keystorePath = keystorePath;
+	}
+
+	public String getKeystorePassword() {
+		return keystorePassword;
+	}
+
+	public void setKeystorePassword(String keystorePassword) {
+		this.keystorePassword = keystorePassword;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("threads.max must be at least 1: " + maxThreads);
+		}
+		this.maxThreads = maxThreads;
+	}
+
+	public String getRootDir() {
+		return rootDir;
+	}
+
+	public void setRootDir(String rootDir) {
+		this.rootDir = rootDir;
+	}
+
+	/**
+	 * @return the directory logs are written to: log.dir if set, otherwise root.dir/Logs
+	 */
+	public String getLogDir() {
+		return logDir != null ? logDir : rootDir + "/Logs";
+	}
+
+	/**
+	 * @return true if log.dir was given, false if the log directory follows root.dir
+	 */
+	public boolean hasLogDir() {
+		return logDir != null;
+	}
+
+	public void setLogDir(String logDir) {
+		this.logDir = logDir;
+	}
+
+	public String getDefaultPage() {
+		return defaultPage;
+	}
+
+	public void setDefaultPage(String defaultPage) {
+		this.defaultPage = defaultPage;
+	}
+
+	public int getDrainSeconds() {
+		return drainSeconds;
+	}
+
+	public void setDrainSeconds(int drainSeconds) {
+		if (drainSeconds < 0) {
+			throw new IllegalArgumentException("shutdown.drainSeconds must not be negative: " + drainSeconds);
+		}
+		this.drainSeconds = drainSeconds;
+	}
+
+	public boolean isTlsEnabled() {
+		return tlsEnabled;
+	}
+
+	public void setTlsEnabled(boolean tlsEnabled) {
+		this.tlsEnabled = tlsEnabled;
+	}
+
+	public List<String> getCachePaths() {
+		return cachePaths;
+	}
+
+	public void setCachePaths(List<String> cachePaths) {
+		for (String path : cachePaths) {
+			if (!path.startsWith("/")) {
+				throw new IllegalArgumentException("cache.paths entries must start with /: " + path);
+			}
+		}
+		this.cachePaths = Collections.unmodifiableList(new ArrayList<>(cachePaths));
+	}
+
+	public int getCacheTtlSeconds() {
+		return cacheTtlSeconds;
+	}
+
+	public void setCacheTtlSeconds(int cacheTtlSeconds) {
+		if (cacheTtlSeconds < 1) {
+			throw new IllegalArgumentException("cache.ttlSeconds must be at least 1: " + cacheTtlSeconds);
+		}
+		this.cacheTtlSeconds = cacheTtlSeconds;
+	}
+
+	public int getCacheMaxMegabytes() {
+		return cacheMaxMegabytes;
+	}
+
+	public void setCacheMaxMegabytes(int cacheMaxMegabytes) {
+		if (cacheMaxMegabytes < 1) {
+			throw new IllegalArgumentException("cache.maxMegabytes must be at least 1: " + cacheMaxMegabytes);
+		}
+		this.cacheMaxMegabytes = cacheMaxMegabytes;
+	}
+
+	public double getTraceSampleRate() {
+		return traceSampleRate;
+	}
+
+	public void setTraceSampleRate(double traceSampleRate) {
+		if (!(traceSampleRate >= 0 && traceSampleRate <= 1)) {
+			throw new IllegalArgumentException("trace.sampleRate must be between 0 and 1: " + traceSampleRate);
+		}
+		this.traceSampleRate = traceSampleRate;
+	}
+
+	public int getTraceSlowMillis() {
+		return traceSlowMillis;
+	}
+
+	public void setTraceSlowMillis(int traceSlowMillis) {
+		if (traceSlowMillis < 0) {
+			throw new IllegalArgumentException("trace.slowMillis must not be negative: " + traceSlowMillis);
+		}
+		this.traceSlowMillis = traceSlowMillis;
+	}
+}
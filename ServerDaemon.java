@@ -0,0 +1,111 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/*
+ServerDaemon.java is the headless entry point: it runs HttpsServer without the Swing GUI, for machines with no
+display. Configuration comes from a .properties file and/or command-line flags (see ServerConfig).
+
+    java -cp APP_RunServer.jar ServerDaemon --config server.properties
+    java -cp APP_RunServer.jar ServerDaemon --port 8443 --root-dir /srv/RootDir --drain-seconds 10
+
+SIGTERM or SIGINT (Ctrl+C) shuts it down gracefully: the listening socket is closed at once, in-flight requests
+get up to shutdown.drainSeconds to finish, then the process exits.
+
+Saving the --config file redeploys without dropping connections: the file is checked every couple of seconds, and
+once a change has settled it is read again and the listening socket is handed to a fresh server instance (see
+ServerLifecycle). To publish new content, upload it to a new directory and point root.dir at it; the switch is atomic.
+Without --config there is nothing to reload.
+*/
+public class ServerDaemon {
+	private static final int CONFIG_POLL_SECONDS = 2;
+
+	public static void main(String[] args) throws Exception {
+		ServerConfig config;
+		try {
+			config = ServerConfig.fromArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java -cp APP_RunServer.jar ServerDaemon [options]");
+			System.err.println(ServerConfig.USAGE);
+			System.exit(2);
+			return;
+		}
+
+		ServerLifecycle lifecycle = new ServerLifecycle(config);
+		long startupMillis;
+		try {
+			startupMillis = lifecycle.start();
+		} catch (Exception e) {
+			HttpsServer.excLogger.log(Level.SEVERE, "Server failed to start: " + e);
+			System.err.println("Server failed to start on port " + config.getPort() + ": " + e);
+			System.exit(1);
+			return;
+		}
+
+		// Shutdown hooks run on SIGTERM/SIGINT. The JVM waits for the hook, so it blocks until the drain is done.
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			System.out.println("Shutdown requested, draining for up to " + config.getDrainSeconds() + " seconds");
+			try {
+				lifecycle.stop();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "https-server-shutdown"));
+
+		String configFile = ServerConfig.configFile(args);
+		if (configFile != null) {
+			watchConfig(new File(configFile), lifecycle, args);
+		}
+
+		System.out.println("Startup: server ready in " + startupMillis + " ms, JVM uptime "
+				+ ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+	}
+
+	/*
+	Polls the config file and reloads when it changes. A change is only acted on once the file has looked the same
+	for a whole poll interval, so a reload never reads a half-written file.
+	*/
+	private static void watchConfig(File configFile, ServerLifecycle lifecycle, String[] args) {
+		ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "config-watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		String[] loaded = {stamp(configFile)};
+		String[] pending = {null};
+		watcher.scheduleWithFixedDelay(() -> {
+			String current = stamp(configFile);
+			if (current.equals(loaded[0])) {
+				pending[0] = null;
+			} else if (current.equals(pending[0])) {
+				loaded[0] = current;
+				pending[0] = null;
+				System.out.println("Config file changed, reloading " + configFile);
+				reload(lifecycle, args);
+			} else {
+				pending[0] = current; // still being written, or just saved: look again next time
+			}
+		}, CONFIG_POLL_SECONDS, CONFIG_POLL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	private static String stamp(File file) {
+		return file.lastModified() + ":" + file.length();
+	}
+
+	/*
+	Re-reads the same command line (and so the same config file) and hands over to it. A bad config is only
+	logged: the running instance keeps serving.
+	*/
+	private static void reload(ServerLifecycle lifecycle, String[] args) {
+		try {
+			lifecycle.reload(ServerConfig.fromArgs(args));
+		} catch (Exception e) {
+			HttpsServer.excLogger.log(Level.WARNING, "Reload failed, still serving the previous config: " + e);
+			System.err.println("Reload failed, still serving the previous config: " + e);
+		}
+	}
+}
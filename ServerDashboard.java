@@ -0,0 +1,143 @@
+/*
+ServerDashboard.java is the live statistics panel at the bottom of the login window. Once a server is started from
+the GUI, it shows what that server is doing, refreshed every second:
+ - requests per second
+ - active connections, connections waiting for a thread, and connections turned away
+ - p50 / p99 latency over the last second (from accepting the connection to sending the response)
+ - bytes sent, in total and per second
+ - how often the PHP response cache answered instead of running php
+
+Sampling happens on its own background thread: it only reads counters the request threads add to (see
+ServerStats.java), so it never slows the server down, and it hands the finished text to the Swing event thread with
+invokeLater, so the window never waits on it either.
+*/
+
+import java.awt.GridLayout;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.swing.*;
+
+public class ServerDashboard extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final JLabel requestsLabel = new JLabel();
+    private final JLabel connectionsLabel = new JLabel();
+    private final JLabel latencyLabel = new JLabel();
+    private final JLabel bytesLabel = new JLabel();
+    private final JLabel cacheLabel = new JLabel();
+
+    // The server being watched is swapped by the event thread and read by the sampler thread
+    private volatile HttpsServer server;
+    private ScheduledExecutorService sampler;
+
+    // Only touched by the sampler thread: the previous sample, to turn totals into per-second numbers
+    private HttpsServer sampledServer;
+    private ServerStats.Snapshot previous;
+    private long previousCacheHits;
+    private long previousCacheMisses;
+
+    public ServerDashboard() {
+        setLayout(new GridLayout(5, 1));
+        setBorder(BorderFactory.createTitledBorder("Server dashboard"));
+        add(requestsLabel);
+        add(connectionsLabel);
+        add(latencyLabel);
+        add(bytesLabel);
+        add(cacheLabel);
+        showIdle();
+    }
+
+    /*
+    Start showing the statistics of the given server. The sampler thread is only created the first time,
+    so nothing runs in the background until the user actually starts a server.
+    */
+    public void watch(HttpsServer server) {
+        this.server = server;
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Dashboard sampler");
+                thread.setDaemon(true); // never keeps the program alive once the window is closed
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void showIdle() {
+        requestsLabel.setText("Requests/s: -");
+        connectionsLabel.setText("Connections: -");
+        latencyLabel.setText("Latency p50 / p99: -");
+        bytesLabel.setText("Sent: -");
+        cacheLabel.setText("PHP cache hits: -");
+    }
+
+    // Runs on the sampler thread every second
+    private void sample() {
+        try {
+            HttpsServer watched = server;
+            ServerStats.Snapshot now = watched.getStats().snapshot();
+            ResponseCache cache = watched.getResponseCache();
+            long cacheHits = cache == null ? 0 : cache.getHits() + cache.getCoalesced();
+            long cacheMisses = cache == null ? 0 : cache.getMisses();
+            int queued = watched.getQueuedConnections();
+
+            // A freshly started server has fresh counters, so there is nothing to compare against yet
+            if (watched != sampledServer) {
+                sampledServer = watched;
+                previous = now;
+                previousCacheHits = cacheHits;
+                previousCacheMisses = cacheMisses;
+                return;
+            }
+
+            String requests = String.format("Requests/s: %.1f", now.requestsPerSecondSince(previous));
+            String connections = String.format("Connections: %d active, %d queued, %.1f rejected/s",
+                    now.activeConnections, queued, now.rejectedPerSecondSince(previous));
+            long p50 = now.latencyPercentileSince(previous, 0.50);
+            long p99 = now.latencyPercentileSince(previous, 0.99);
+            String latency = p50 < 0 ? "Latency p50 / p99: no requests"
+                    : "Latency p50 / p99: " + formatMicros(p50) + " / " + formatMicros(p99);
+            String bytes = "Sent: " + formatBytes(now.bytesSent) + " total, "
+                    + formatBytes((long) now.bytesPerSecondSince(previous)) + "/s";
+            long lookups = (cacheHits - previousCacheHits) + (cacheMisses - previousCacheMisses);
+            String cacheText = cache == null ? "PHP cache hits: no routes cached"
+                    : lookups == 0 ? "PHP cache hits: no PHP requests"
+                    : String.format("PHP cache hits: %.0f%%", 100.0 * (cacheHits - previousCacheHits) / lookups);
+
+            previous = now;
+            previousCacheHits = cacheHits;
+            previousCacheMisses = cacheMisses;
+
+            SwingUtilities.invokeLater(() -> {
+                requestsLabel.setText(requests);
+                connectionsLabel.setText(connections);
+                latencyLabel.setText(latency);
+                bytesLabel.setText(bytes);
+                cacheLabel.setText(cacheText);
+            });
+        } catch (RuntimeException e) {
+            // An exception would cancel every later sample, so log it and carry on
+            HttpsServer.excLogger.log(Level.WARNING, e.toString());
+        }
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return micros + " us";
+        }
+        return String.format("%.1f ms", micros / 1000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
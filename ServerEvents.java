@@ -0,0 +1,80 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ServerEvents.java holds the Java Flight Recorder events the server emits. They cost next to nothing unless a recording
+is running; to record them:
+    java -XX:StartFlightRecording=filename=server.jfr,settings=profile -cp APP_RunServer.jar ServerDaemon ...
+    jfr print --events serverproject.RequestPhase server.jfr
+or attach to a running server with: jcmd <pid> JFR.start filename=server.jfr duration=60s
+
+Every event of one request carries the same trace ID when the request was sampled (ServerConfig trace.sampleRate),
+so a slow-request log line or an X-Trace-Id response header leads straight to its events.
+*/
+public final class ServerEvents {
+
+	private ServerEvents() {
+	}
+
+	@Name("serverproject.ConnectionAccepted")
+	@Label("Connection Accepted")
+	@Category({"Server Project", "Connections"})
+	@Description("A connection handed to the thread pool; the duration is the time spent dispatching it on the accept thread")
+	@StackTrace(false)
+	public static class ConnectionAccepted extends Event {
+		@Label("Remote Address")
+		String remoteAddress;
+
+		@Label("TLS")
+		boolean tls;
+	}
+
+	@Name("serverproject.ConnectionRejected")
+	@Label("Connection Rejected")
+	@Category({"Server Project", "Connections"})
+	@Description("A connection closed straight away because every pool thread was busy")
+	@StackTrace(false)
+	public static class ConnectionRejected extends Event {
+		@Label("Remote Address")
+		String remoteAddress;
+
+		@Label("Max Threads")
+		int maxThreads;
+	}
+
+	@Name("serverproject.RequestPhase")
+	@Label("Request Phase")
+	@Category({"Server Project", "Requests"})
+	@Description("One phase of a request: log check, queue wait, TLS handshake, parsing, path check, file read, PHP, sending")
+	@StackTrace(false)
+	public static class RequestPhase extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Trace ID")
+		String traceId;
+	}
+
+	@Name("serverproject.Request")
+	@Label("Request")
+	@Category({"Server Project", "Requests"})
+	@Description("A whole request, from being accepted until the response was sent")
+	@StackTrace(false)
+	public static class Request extends Event {
+		@Label("Method")
+		String method;
+
+		@Label("Path")
+		String path;
+
+		@Label("Trace ID")
+		String traceId;
+
+		@Label("Failed")
+		boolean failed;
+	}
+}
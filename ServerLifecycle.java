@@ -0,0 +1,223 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+/*
+ServerLifecycle.java runs HttpsServer instances behind one listening socket it owns, so the server can be
+redeployed without refusing or dropping a single connection:
+
+ - reload(config): prepares a complete new HttpsServer (keystore, thread pool, warm-up) while the old one keeps
+   serving, then swaps it in atomically. Connections accepted after the swap go to the new instance; the old one
+   drains its in-flight requests in the background, up to its drain deadline.
+ - switchRoot(dir): atomically points new connections at a different, fully populated RootDir snapshot
+   (e.g. RootDir-v2 uploaded next to RootDir). In-flight requests finish against the old directory.
+ - stop(): closes the listening socket, then drains every instance that still has requests in flight.
+
+The port cannot change across a reload, because the listening socket is what is being handed over. Neither can
+the log directory: it is fixed at the first start (log.dir, or the first root.dir's Logs), so a new root.dir
+snapshot does not need a Logs folder of its own and the old one can be deleted once drained.
+*/
+public class ServerLifecycle {
+	private final int port;
+	private final String logDir;
+	private final AtomicReference<HttpsServer> current = new AtomicReference<>();
+	private final List<Thread> drains = new ArrayList<>();
+	private final ServerConfig initialConfig;
+	private ServerSocket listener;
+	private Thread acceptor;
+	private volatile boolean running;
+
+	/**
+	 * <h3>ServerLifecycle Constructor</h3>
+	 *
+	 * @param config the configuration of the first server instance; its port is kept for the lifetime of the manager
+	 */
+	public ServerLifecycle(ServerConfig config) {
+		this.initialConfig = config;
+		this.port = config.getPort();
+		this.logDir = config.getLogDir();
+		config.setLogDir(logDir);
+	}
+
+	/**
+	 * <h3>start</h3>
+	 *
+	 * <p>
+	 * Prepares the first server instance, then binds the port and starts accepting.
+	 * </p>
+	 *
+	 * @return milliseconds taken until connections were being accepted
+	 * @throws Exception - If the server cannot be prepared or the port cannot be bound
+	 */
+	public synchronized long start() throws Exception {
+		long startNanos = System.nanoTime();
+		HttpsServer first = new HttpsServer(initialConfig);
+		first.prepare();
+		current.set(first);
+		listener = new ServerSocket(port, 0, InetAddress.getByName(initialConfig.getBindAddress()));
+		running = true;
+		acceptor = new Thread(this::acceptLoop, "https-acceptor");
+		acceptor.start();
+		long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		System.out.println("Server is running... Go here: " + (initialConfig.isTlsEnabled() ? "https" : "http") + "://localhost:" + port + " (started in " + startupMillis + " ms)");
+		return startupMillis;
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			Socket socket;
+			try {
+				socket = listener.accept();
+			} catch (IOException e) {
+				if (!running) {
+					break; // stop() closed the listening socket
+				}
+				HttpsServer.excLogger.log(Level.WARNING, e.toString());
+				continue;
+			}
+			try {
+				// A reload can retire the instance between reading it and dispatching to it; the
+				// connection then goes to its replacement instead of being dropped.
+				HttpsServer target = current.get();
+				while (!target.dispatch(socket)) {
+					HttpsServer replacement = current.get();
+					if (replacement == target) {
+						socket.close(); // stopping: there is no newer instance to hand it to
+						break;
+					}
+					target = replacement;
+				}
+			} catch (IOException e) {
+				HttpsServer.excLogger.log(Level.WARNING, e.toString());
+				try {
+					socket.close();
+				} catch (IOException closeException) {
+					// Already gone
+				}
+			}
+		}
+	}
+
+	/**
+	 * <h3>reload</h3>
+	 *
+	 * <p>
+	 * Hands the listening socket over to a new server instance built from next. If the new instance cannot be
+	 * prepared (bad keystore, missing RootDir...), the exception is thrown and the running instance is untouched.
+	 * If only the RootDir changed, the running instance just switches to it (see switchRoot).
+	 * </p>
+	 *
+	 * @param next the configuration to serve with from now on
+	 * @throws Exception - If the new instance cannot be prepared
+	 * @throws IllegalArgumentException - If next asks for a different port, bind address or log.dir
+	 */
+	public synchronized void reload(ServerConfig next) throws Exception {
+		if (next.getPort() != port) {
+			throw new IllegalArgumentException("The listening socket is handed over, so the port cannot change: "
+					+ port + " -> " + next.getPort());
+		}
+		if (!next.getBindAddress().equals(initialConfig.getBindAddress())) {
+			throw new IllegalArgumentException("The listening socket is handed over, so the bind address cannot change: "
+					+ initialConfig.getBindAddress() + " -> " + next.getBindAddress());
+		}
+		if (next.hasLogDir() && !next.getLogDir().equals(logDir)) {
+			throw new IllegalArgumentException("The log directory is fixed at the first start: "
+					+ logDir + " -> " + next.getLogDir());
+		}
+		next.setLogDir(logDir); // a new root.dir does not move the logs
+		HttpsServer old = current.get();
+		if (onlyRootDirChanged(old.getConfig(), next)) {
+			switchRoot(next.getRootDir());
+			return;
+		}
+		long startNanos = System.nanoTime();
+		HttpsServer replacement = new HttpsServer(next);
+		replacement.prepare();
+		current.set(replacement);
+		System.out.println("Handed over to a new server instance in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms, draining the old one");
+
+		Thread drain = new Thread(() -> {
+			try {
+				old.drain();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "https-drain");
+		drain.start();
+		drains.removeIf(thread -> !thread.isAlive());
+		drains.add(drain);
+	}
+
+	/**
+	 * <h3>switchRoot</h3>
+	 *
+	 * <p>
+	 * Atomically serves new connections from rootDir. Populate the directory completely before calling this.
+	 * </p>
+	 *
+	 * @param rootDir the directory to serve from
+	 * @throws IllegalArgumentException - If rootDir is not a readable directory
+	 */
+	public void switchRoot(String rootDir) {
+		current.get().switchRoot(new File(rootDir));
+	}
+
+	/**
+	 * <h3>stop</h3>
+	 *
+	 * <p>
+	 * Stops accepting at once, then waits for the current instance and any instance still draining after a reload.
+	 * </p>
+	 *
+	 * @return true if every in-flight request finished within its drain deadline
+	 * @throws InterruptedException - If interrupted while waiting
+	 */
+	public synchronized boolean stop() throws InterruptedException {
+		if (!running) {
+			return true;
+		}
+		running = false;
+		try {
+			listener.close();
+		} catch (IOException e) {
+			HttpsServer.excLogger.log(Level.WARNING, e.toString());
+		}
+		acceptor.join();
+		boolean drained = current.get().drain();
+		for (Thread drain : drains) {
+			drain.join();
+		}
+		System.out.println("Server is stopped");
+		return drained;
+	}
+
+	public HttpsServer getCurrent() {
+		return current.get();
+	}
+
+	private static boolean onlyRootDirChanged(ServerConfig a, ServerConfig b) {
+		return !a.getRootDir().equals(b.getRootDir())
+				&& a.getPort() == b.getPort()
+				&& a.getBindAddress().equals(b.getBindAddress())
+				&& a.getLogDir().equals(b.getLogDir())
+				&& a.getKeystorePath().equals(b.getKeystorePath())
+				&& a.getKeystorePassword().equals(b.getKeystorePassword())
+				&& a.getMaxThreads() == b.getMaxThreads()
+				&& a.getDefaultPage().equals(b.getDefaultPage())
+				&& a.getDrainSeconds() == b.getDrainSeconds()
+				&& a.isTlsEnabled() == b.isTlsEnabled()
+				&& a.getCachePaths().equals(b.getCachePaths())
+				&& a.getCacheTtlSeconds() == b.getCacheTtlSeconds()
+				&& a.getCacheMaxMegabytes() == b.getCacheMaxMegabytes()
+				&& a.getTraceSampleRate() == b.getTraceSampleRate()
+				&& a.getTraceSlowMillis() == b.getTraceSlowMillis();
+	}
+}
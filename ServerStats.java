@@ -0,0 +1,126 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ServerStats.java counts what one HttpsServer instance is doing, for the GUI dashboard (or anything else that wants to
+sample it).
+
+Request threads only ever add to counters (LongAdder, AtomicInteger, one AtomicLongArray slot per request), so
+recording never takes a lock and never waits on whoever is reading. Readers call snapshot() at whatever interval they
+like and diff two snapshots to get rates and interval percentiles; a snapshot is not atomic across counters, which
+is fine for a dashboard.
+
+Latencies are kept in microseconds in LatencyHistogram buckets with 8 sub-buckets per power of two, so percentiles
+are within 12.5%.
+*/
+public class ServerStats {
+	private static final LatencyHistogram.Buckets BUCKETS = new LatencyHistogram.Buckets(3);
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final AtomicLongArray latencyCounts = new AtomicLongArray(BUCKETS.size());
+
+	/**
+	 * Called by the request thread when it starts on a connection.
+	 */
+	void connectionStarted() {
+		activeConnections.incrementAndGet();
+	}
+
+	/**
+	 * <h3>connectionFinished</h3>
+	 *
+	 * @param latencyNanos time from the connection being accepted until the response was sent
+	 * @param bytes        bytes written to the client, headers included
+	 */
+	void connectionFinished(long latencyNanos, long bytes) {
+		activeConnections.decrementAndGet();
+		requests.increment();
+		bytesSent.add(bytes);
+		latencyCounts.incrementAndGet(BUCKETS.index(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+	}
+
+	/**
+	 * Called when a connection is turned away because every thread is busy.
+	 */
+	void connectionRejected() {
+		rejected.increment();
+	}
+
+	/**
+	 * @return the current counter values
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = latencyCounts.get(i);
+		}
+		return new Snapshot(System.nanoTime(), requests.sum(), bytesSent.sum(), rejected.sum(),
+				activeConnections.get(), counts);
+	}
+
+	/**
+	 * Counter values at one point in time. Totals are since the server was created; the *Since methods give the
+	 * change over the interval from an earlier snapshot.
+	 */
+	public static class Snapshot {
+		public final long takenAtNanos;
+		public final long requests;
+		public final long bytesSent;
+		public final long rejected;
+		public final int activeConnections;
+		private final long[] latencyCounts;
+
+		private Snapshot(long takenAtNanos, long requests, long bytesSent, long rejected, int activeConnections,
+						 long[] latencyCounts) {
+			this.takenAtNanos = takenAtNanos;
+			this.requests = requests;
+			this.bytesSent = bytesSent;
+			this.rejected = rejected;
+			this.activeConnections = activeConnections;
+			this.latencyCounts = latencyCounts;
+		}
+
+		public double requestsPerSecondSince(Snapshot earlier) {
+			return perSecond(requests - earlier.requests, earlier);
+		}
+
+		public double bytesPerSecondSince(Snapshot earlier) {
+			return perSecond(bytesSent - earlier.bytesSent, earlier);
+		}
+
+		public double rejectedPerSecondSince(Snapshot earlier) {
+			return perSecond(rejected - earlier.rejected, earlier);
+		}
+
+		private double perSecond(long delta, Snapshot earlier) {
+			long elapsedNanos = takenAtNanos - earlier.takenAtNanos;
+			return elapsedNanos <= 0 ? 0 : delta * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * <h3>latencyPercentileSince</h3>
+		 *
+		 * @param earlier an earlier snapshot of the same ServerStats
+		 * @param p       the percentile as a fraction, e.g. 0.99
+		 * @return the latency in microseconds that p of the requests finished in during the interval, or -1 if
+		 * no requests finished
+		 */
+		public long latencyPercentileSince(Snapshot earlier, double p) {
+			// Counted from the buckets themselves: requests is a separate counter, so a snapshot taken while a
+			// request finishes can have one more request than bucket entries, and the rank would never be reached
+			long total = 0;
+			for (int i = 0; i < latencyCounts.length; i++) {
+				total += latencyCounts[i] - earlier.latencyCounts[i];
+			}
+			if (total <= 0) {
+				return -1;
+			}
+			return BUCKETS.percentile(latencyCounts, earlier.latencyCounts, total, p);
+		}
+	}
+}
@@ -5,11 +5,16 @@ import java.nio.file.Files;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.logging.Level;
+import javax.net.ssl.SSLSocket;
 
 public class ThreadHTTP implements Runnable {
 	private File serverRootDirectory;
 	private String defaultPageName;
 	private Socket connectionSocket;
+	private ResponseCache responseCache; // null when no PHP routes are cached
+	private ServerStats serverStats;
+	private long acceptedAtNanos; // latency is measured from here, so it includes time waiting for a pool thread
+	private RequestTrace trace;
 
 	/**
 	 * <h3>ThreadHTTP Constructor</h3>
@@ -23,9 +28,33 @@ public class ThreadHTTP implements Runnable {
 	 * @param connectionSocket    the socket between the server and the client for this thread to work with
 	 */
 	public ThreadHTTP(File serverRootDirectory, String defaultPageName, Socket connectionSocket) {
+		this(serverRootDirectory, defaultPageName, connectionSocket, null, new ServerStats(), RequestTrace.start(0, 0));
+	}
+
+	/**
+	 * <h3>ThreadHTTP Constructor</h3>
+	 * 
+	 * <p>
+	 * Constructs a ThreadHTTP runnable object that answers PHP requests on cached routes from responseCache
+	 * and records its latency and bytes sent in serverStats, and the time spent in each phase in trace
+	 * <p>
+	 * 
+	 * @param serverRootDirectory the root directory from which the server is being run.
+	 * @param defaultPageName     the name of the file to load when the user provides no input (typically index.html)
+	 * @param connectionSocket    the socket between the server and the client for this thread to work with
+	 * @param responseCache       the server's PHP output cache, or null to run every PHP request
+	 * @param serverStats         the server's counters
+	 * @param trace               the trace started when the connection was accepted
+	 */
+	public ThreadHTTP(File serverRootDirectory, String defaultPageName, Socket connectionSocket,
+					  ResponseCache responseCache, ServerStats serverStats, RequestTrace trace) {
 		this.serverRootDirectory = serverRootDirectory;
 		this.defaultPageName = defaultPageName;
 		this.connectionSocket = connectionSocket;
+		this.responseCache = responseCache;
+		this.serverStats = serverStats;
+		this.acceptedAtNanos = System.nanoTime();
+		this.trace = trace;
 	}
 
 	/**
@@ -135,6 +164,9 @@ public class ThreadHTTP implements Runnable {
 		outWriter.write("Date: " + currentDate + "\r\n");
 		outWriter.write("Server: Ryan's humble thread from Joey's kingdom\r\n");
 		outWriter.write("Content-length: " + bodyLength + "\r\n");
+		if (trace.getTraceId() != null) {
+			outWriter.write("X-Trace-Id: " + trace.getTraceId() + "\r\n"); // only on sampled requests
+		}
 		outWriter.write("Content-type: " + requestedFileType + "\r\n\r\n");
 		outWriter.flush();
 	}
@@ -207,6 +239,12 @@ public class ThreadHTTP implements Runnable {
 
 		String methodCommand = parsedClientHttpRequest[0]; 		// HTTP request format: Method | URL | Version \cr-lf
 		String URL = parsedClientHttpRequest[1];
+		String query = null;
+		int queryStart = URL.indexOf('?');
+		if (queryStart >= 0) {
+			query = URL.substring(queryStart + 1); // Only handed to PHP scripts on cached routes
+			URL = URL.substring(0, queryStart);
+		}
 		if (URL.endsWith("/")) {
 			URL += defaultPageName; // If user does not specify a file, load the default page
 		} 
@@ -214,15 +252,39 @@ public class ThreadHTTP implements Runnable {
 		// preceding the file name from the URL & make file relative to server root
 		File requestedFile = new File(serverRootDirectory, URL.substring(1, URL.length()));
 		// Make sure if the user has included /../../.. etc in the path, we don't allow them to get out of the server directory.
-		if (requestedFile.canRead() && requestedFile.getCanonicalPath().startsWith(serverRootDirectory.getCanonicalPath())) {
+		// (A separator must follow the root, so RootDir2/... does not pass as being inside RootDir.)
+		String rootPrefix = serverRootDirectory.getCanonicalPath() + File.separator;
+		boolean insideRoot = requestedFile.canRead()
+				&& (requestedFile.getCanonicalPath() + File.separator).startsWith(rootPrefix);
+		trace.mark(RequestTrace.Phase.PATH_CHECK);
+		if (insideRoot) {
+			// Cached routes run PHP on GET, so they are matched against where the file really is, never the raw URL:
+			// a glob like /reports/** must not let /reports/../media/RyanMedia/comment.php through.
+			boolean cachedRoute = responseCache != null && requestedFile.getName().endsWith(".php")
+					&& !hasDotDotSegment(URL) && responseCache.isCacheable(rootRelativePath(requestedFile));
 			// *******************************
 			// **** GET, HEAD, POST **********
 			// *******************************
-			if (methodCommand.equals("GET") || methodCommand.equals("HEAD")) {
+			if ((methodCommand.equals("GET") || methodCommand.equals("HEAD")) && cachedRoute) {
+				// PHP on a cached route runs with the query string as its argument, like POST does with the body
+				String queryArgument = query == null ? "" : query;
+				byte[] phpOutput = responseCache.get(ResponseCache.key(requestedFile, "GET", queryArgument), () -> {
+					trace.mark(RequestTrace.Phase.CACHE_LOOKUP);
+					return runPhpScript(requestedFile, queryArgument);
+				});
+				trace.mark(RequestTrace.Phase.CACHE_LOOKUP);
+				if (methodCommand.equals("GET")) {
+					sendResponseHEADBODY("text/html", phpOutput, outBufStream, outWriter);
+				} else {
+					sendResponseHEAD("text/html", phpOutput.length, "HTTP/1.0 200 OK", outWriter);
+				}
+				trace.mark(RequestTrace.Phase.SEND_RESPONSE);
+			} else if (methodCommand.equals("GET") || methodCommand.equals("HEAD")) {
 				// Read the requested file on the server and store in byte array for out stream
 				// transmission.
 				String requestedFileType = URLConnection.getFileNameMap().getContentTypeFor(requestedFile.getName());
 				byte[] requestedFileByteData = Files.readAllBytes(requestedFile.toPath());
+				trace.mark(RequestTrace.Phase.READ_FILE);
 
 				// send head and body (get) or just head depending on user request
 				if (methodCommand.equals("GET")) {
@@ -230,41 +292,102 @@ public class ThreadHTTP implements Runnable {
 				} else if (methodCommand.equals("HEAD")) {
 					sendResponseHEAD(requestedFileType, requestedFileByteData.length, "HTTP/1.0 200 OK", outWriter);
 				}
+				trace.mark(RequestTrace.Phase.SEND_RESPONSE);
 			} else if (methodCommand.equals("POST")) {
 				String clientBody = getClientHttpBody(inReader, parsedHttpHeaders); // Reads user-sent HTML form
-				// Builds a php command to be sent to another thread for command-line execution
-				ProcessBuilder cgiProcessBuilder = null;
-				String operatingSystem = System.getProperty("os.name");
-				System.out.println(serverRootDirectory.getCanonicalPath());
-				// Execute bundled php.exe if Windows, or php installed on system PATH if other OS (requires manual PATH installation).
-				if (operatingSystem.startsWith("Windows")) {
-					cgiProcessBuilder = new ProcessBuilder(serverRootDirectory.getCanonicalPath() + "\\phpWin\\php.exe",
-							requestedFile.getCanonicalPath(), clientBody);
+				trace.mark(RequestTrace.Phase.READ_BODY);
+				byte[] phpOutput;
+				if (cachedRoute) {
+					phpOutput = responseCache.get(ResponseCache.key(requestedFile, "POST", clientBody), () -> {
+						trace.mark(RequestTrace.Phase.CACHE_LOOKUP);
+						return runPhpScript(requestedFile, clientBody);
+					});
+					trace.mark(RequestTrace.Phase.CACHE_LOOKUP);
 				} else {
-					cgiProcessBuilder = new ProcessBuilder("php", requestedFile.getCanonicalPath(), clientBody);
+					phpOutput = runPhpScript(requestedFile, clientBody).body;
 				}
-				// cgiProcessBuilder.redirectErrorStream(true); // for troubleshooting, re-direct errors to this thread
-				cgiProcessBuilder.directory(serverRootDirectory);
-				Process cgiProcess = cgiProcessBuilder.start();
-
-				// Read in output from running the php command
-				BufferedReader stdInput = new BufferedReader(new InputStreamReader(cgiProcess.getInputStream()));
-				int phpOutputASCII;
-				StringBuilder responseBuilder = new StringBuilder();
-				while ((phpOutputASCII = stdInput.read()) != -1) {
-					responseBuilder.append((char) phpOutputASCII);
-				}
-				
 				// Send a header & body HTML response with the php script's returned output.
-				sendResponseHEADBODY("text/html", responseBuilder.toString().getBytes(), outBufStream, outWriter);
+				sendResponseHEADBODY("text/html", phpOutput, outBufStream, outWriter);
+				trace.mark(RequestTrace.Phase.SEND_RESPONSE);
 			} else {
 				System.out.println("The HTTP method requested is not implemented.");
 			}
 		} else {
 			sendResponseFileNotFound(outWriter); // could not find file, or user requested file outside of directory
+			trace.mark(RequestTrace.Phase.SEND_RESPONSE);
 		}
 	}
 
+	/**
+	 * <h3>rootRelativePath</h3>
+	 * 
+	 * @param requestedFile a file inside the server root
+	 * @return the file's canonical path relative to the server root, as a URL path (e.g. /views/report.php)
+	 * @throws IOException - If a canonical path cannot be resolved
+	 */
+	private String rootRelativePath(File requestedFile) throws IOException {
+		String rootPath = serverRootDirectory.getCanonicalPath();
+		String relative = requestedFile.getCanonicalPath().substring(rootPath.length()).replace(File.separatorChar, '/');
+		return relative.startsWith("/") ? relative : "/" + relative;
+	}
+
+	private static boolean hasDotDotSegment(String URL) {
+		for (String segment : URL.split("/")) {
+			if (segment.equals("..")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * <h3>runPhpScript</h3>
+	 * 
+	 * <p>
+	 * Runs a php script on the command line and collects everything it prints.
+	 * </p>
+	 * 
+	 * @param requestedFile the php script to run
+	 * @param argument The argument handed to the script (the HTML form body, or the query string on cached routes)
+	 * @return The script's output, cacheable if the script exited with status 0
+	 * @throws IOException - If php cannot be started or an I/O error occurs
+	 */
+	private ResponseCache.Result runPhpScript(File requestedFile, String argument) throws IOException {
+		// Builds a php command to be sent to another thread for command-line execution
+		ProcessBuilder cgiProcessBuilder = null;
+		String operatingSystem = System.getProperty("os.name");
+		System.out.println(serverRootDirectory.getCanonicalPath());
+		// Execute bundled php.exe if Windows, or php installed on system PATH if other OS (requires manual PATH installation).
+		if (operatingSystem.startsWith("Windows")) {
+			cgiProcessBuilder = new ProcessBuilder(serverRootDirectory.getCanonicalPath() + "\\phpWin\\php.exe",
+					requestedFile.getCanonicalPath(), argument);
+		} else {
+			cgiProcessBuilder = new ProcessBuilder("php", requestedFile.getCanonicalPath(), argument);
+		}
+		// cgiProcessBuilder.redirectErrorStream(true); // for troubleshooting, re-direct errors to this thread
+		cgiProcessBuilder.directory(serverRootDirectory);
+		Process cgiProcess = cgiProcessBuilder.start();
+		trace.mark(RequestTrace.Phase.PHP_SPAWN);
+
+		// Read in output from running the php command
+		BufferedReader stdInput = new BufferedReader(new InputStreamReader(cgiProcess.getInputStream()));
+		int phpOutputASCII;
+		StringBuilder responseBuilder = new StringBuilder();
+		while ((phpOutputASCII = stdInput.read()) != -1) {
+			responseBuilder.append((char) phpOutputASCII);
+		}
+
+		boolean succeeded;
+		try {
+			succeeded = cgiProcess.waitFor() == 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			succeeded = false;
+		}
+		trace.mark(RequestTrace.Phase.PHP_OUTPUT);
+		return new ResponseCache.Result(responseBuilder.toString().getBytes(), succeeded);
+	}
+
 	/**
 	 * <h3>ThreadHTTP Run (Runnable implementation)</h3>
 	 * 
@@ -276,11 +399,16 @@ public class ThreadHTTP implements Runnable {
 	@Override
 	public void run() {
 		String rootPath = serverRootDirectory.getPath(); // Convert the path to a usable String
+		serverStats.connectionStarted();
+		trace.mark(RequestTrace.Phase.QUEUE_WAIT);
+		CountingOutputStream countingStream = null;
+		boolean failed = true; // until the response has been sent
 
 		try (
 				// Create (byte) streams for incoming reads and outgoing writes
 				InputStream inBufStream = new BufferedInputStream(connectionSocket.getInputStream());
-				OutputStream outBufStream = new BufferedOutputStream(connectionSocket.getOutputStream());
+				OutputStream outBufStream = new BufferedOutputStream(
+						countingStream = new CountingOutputStream(connectionSocket.getOutputStream()));
 				// Create (US-ASCII charset) buffered reader & writer objects, using the
 				// buffered streams^
 				BufferedReader inReader = new BufferedReader(new InputStreamReader(inBufStream, "US-ASCII"));
@@ -289,16 +417,53 @@ public class ThreadHTTP implements Runnable {
 			// *********************************
 			// **** HTTP REQUEST PROCESSING ****
 			// *********************************
+			// Do the TLS handshake up front (it would otherwise happen on first read) so it is timed on its own
+			if (connectionSocket instanceof SSLSocket) {
+				((SSLSocket) connectionSocket).startHandshake();
+				trace.mark(RequestTrace.Phase.TLS_HANDSHAKE);
+			}
 			// Parse, then Process and respond to the HTTP request
 			String[] parsedClientHttpRequest = parseClientHttpRequest(inReader);
+			trace.mark(RequestTrace.Phase.REQUEST_LINE);
+			trace.describe(parsedClientHttpRequest[0],
+					parsedClientHttpRequest.length > 1 ? parsedClientHttpRequest[1] : "-");
 			HashMap<String, String> parsedHttpHeaders = parseHttpHeaders(inReader);
+			trace.mark(RequestTrace.Phase.HEADERS);
 			processClientHTTPRequest(outBufStream, outWriter, inReader, rootPath, parsedClientHttpRequest, parsedHttpHeaders);
 			connectionSocket.close();
+			failed = false;
 
 		} catch (IOException e) {
             //e.printStackTrace();
 			String exception = e.toString();
 			HttpsServer.excLogger.log(Level.WARNING, exception);
+		} finally {
+			serverStats.connectionFinished(System.nanoTime() - acceptedAtNanos,
+					countingStream == null ? 0 : countingStream.count);
+			trace.finish(failed);
+		}
+	}
+
+	/*
+	Counts the bytes that actually reach the socket, headers included. Only the request thread touches count.
+	*/
+	private static class CountingOutputStream extends FilterOutputStream {
+		long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package serverbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A throwaway RootDir for benchmarks: index.html, fixed-size payload files, a Logs directory and,
+ * on request, a self-signed keystore generated with the JDK's keytool.
+ */
+final class BenchmarkRoot implements AutoCloseable {
+    static final String KEYSTORE_PASSWORD = "benchpass";
+
+    private final Path dir;
+
+    BenchmarkRoot() throws IOException {
+        dir = Files.createTempDirectory("serverbench-root");
+        Files.createDirectories(dir.resolve("Logs"));
+        Files.write(dir.resolve("index.html"),
+                "<html><head><title>bench</title></head><body><h1>Hello</h1></body></html>\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    File dir() {
+        return dir.toFile();
+    }
+
+    /** Writes payload-&lt;size&gt;.bin filled with random bytes and returns its URL path. */
+    String payload(int size) throws IOException {
+        String name = "payload-" + size + ".bin";
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Files.write(dir.resolve(name), data);
+        return "/" + name;
+    }
+
+    /** Generates mykey.keystore (RSA 2048, CN=localhost) and returns its path. */
+    String keystore() throws IOException, InterruptedException {
+        Path keystore = dir.resolve("mykey.keystore");
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "RSA",
+                "-keysize", "2048", "-validity", "2", "-dname", "CN=localhost", "-storetype", "JKS",
+                "-keystore", keystore.toString(), "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IOException("keytool failed to generate " + keystore);
+        }
+        return keystore.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package serverbench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ThreadHTTP.parseClientHttpRequest and ThreadHTTP.parseHttpHeaders over realistic request heads.
+ *
+ * <p>Each operation wraps the request in a fresh BufferedReader, matching the per-connection reader
+ * ThreadHTTP.run() builds. The header benchmark starts the reader where parseClientHttpRequest leaves
+ * it (on the '\n' after the request line), exactly as in the server.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class HttpParsingBenchmark {
+
+    @Param({"curl", "browser", "form"})
+    public String requestSet;
+
+    private Object threadHttp;
+    private Method parseClientHttpRequest;
+    private Method parseHttpHeaders;
+    private String request;
+    private String headerSection;
+
+    @Setup
+    public void setup() {
+        threadHttp = ServerAccess.newThreadHttp(new File("."), "index.html");
+        parseClientHttpRequest = ServerAccess.method("ThreadHTTP", "parseClientHttpRequest", Reader.class);
+        parseHttpHeaders = ServerAccess.method("ThreadHTTP", "parseHttpHeaders", Reader.class);
+        request = HttpRequests.byName(requestSet);
+        headerSection = request.substring(request.indexOf('\r') + 1);
+    }
+
+    @Benchmark
+    public Object requestLine() throws Exception {
+        return ServerAccess.invoke(parseClientHttpRequest, threadHttp, new BufferedReader(new StringReader(request)));
+    }
+
+    @Benchmark
+    public Object headers() throws Exception {
+        return ServerAccess.invoke(parseHttpHeaders, threadHttp, new BufferedReader(new StringReader(headerSection)));
+    }
+
+    /** Both parsers back to back, as ThreadHTTP.run() calls them. */
+    @Benchmark
+    public Object requestHead() throws Exception {
+        Reader reader = new BufferedReader(new StringReader(request));
+        ServerAccess.invoke(parseClientHttpRequest, threadHttp, reader);
+        return ServerAccess.invoke(parseHttpHeaders, threadHttp, reader);
+    }
+}
@@ -0,0 +1,66 @@
+package serverbench;
+
+/**
+ * Realistic request heads used by the parsing and round-trip benchmarks.
+ */
+final class HttpRequests {
+
+    private HttpRequests() {
+    }
+
+    /** What curl sends: request line plus three short headers. */
+    static final String CURL_GET = "GET /index.html HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "User-Agent: curl/8.5.0\r\n"
+            + "Accept: */*\r\n"
+            + "\r\n";
+
+    /** A desktop Chrome top-level navigation, including client hints and a cookie. */
+    static final String BROWSER_GET = "GET /media/RyanMedia/RyanComments.html HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: keep-alive\r\n"
+            + "sec-ch-ua: \"Chromium\";v=\"124\", \"Google Chrome\";v=\"124\", \"Not-A.Brand\";v=\"99\"\r\n"
+            + "sec-ch-ua-mobile: ?0\r\n"
+            + "sec-ch-ua-platform: \"Windows\"\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) "
+            + "Chrome/124.0.0.0 Safari/537.36\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,"
+            + "*/*;q=0.8,application/signed-exchange;v=b3;q=0.7\r\n"
+            + "Sec-Fetch-Site: same-origin\r\n"
+            + "Sec-Fetch-Mode: navigate\r\n"
+            + "Sec-Fetch-User: ?1\r\n"
+            + "Sec-Fetch-Dest: document\r\n"
+            + "Referer: https://localhost/index.html\r\n"
+            + "Accept-Encoding: gzip, deflate, br, zstd\r\n"
+            + "Accept-Language: en-US,en;q=0.9\r\n"
+            + "Cookie: theme=dark; visited=1; _ga=GA1.1.123456789.1700000000\r\n"
+            + "\r\n";
+
+    /** The comment form submission, without its body. */
+    static final String FORM_POST = "POST /media/RyanMedia/comment.php HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Content-Length: 38\r\n"
+            + "Cache-Control: max-age=0\r\n"
+            + "Origin: https://localhost\r\n"
+            + "Content-Type: application/x-www-form-urlencoded\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Referer: https://localhost/media/RyanMedia/RyanComments.html\r\n"
+            + "Accept-Language: en-US,en;q=0.5\r\n"
+            + "\r\n";
+
+    static String byName(String name) {
+        switch (name) {
+            case "curl":
+                return CURL_GET;
+            case "browser":
+                return BROWSER_GET;
+            case "form":
+                return FORM_POST;
+            default:
+                throw new IllegalArgumentException("Unknown request set: " + name);
+        }
+    }
+}
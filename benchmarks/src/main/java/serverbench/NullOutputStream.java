@@ -0,0 +1,25 @@
+package serverbench;
+
+import java.io.OutputStream;
+
+/**
+ * An in-memory sink that discards bytes but counts them, so response benchmarks measure the
+ * server's formatting and copying rather than the growth of a ByteArrayOutputStream.
+ */
+final class NullOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    long count() {
+        return count;
+    }
+}
@@ -0,0 +1,76 @@
+package serverbench;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ThreadHTTP.sendResponseHEAD and ThreadHTTP.sendResponseHEADBODY against in-memory streams.
+ *
+ * <p>The stream stack (BufferedOutputStream, and a US-ASCII BufferedWriter over it) is rebuilt per
+ * operation, as ThreadHTTP.run() does per connection, on top of a counting sink.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ResponseWriteBenchmark {
+
+    @Param({"0", "1024", "65536"})
+    public int bodySize;
+
+    private Object threadHttp;
+    private Method sendResponseHEAD;
+    private Method sendResponseHEADBODY;
+    private byte[] body;
+    private NullOutputStream sink;
+
+    @Setup
+    public void setup() {
+        threadHttp = ServerAccess.newThreadHttp(new File("."), "index.html");
+        sendResponseHEAD = ServerAccess.method("ThreadHTTP", "sendResponseHEAD",
+                String.class, int.class, String.class, Writer.class);
+        sendResponseHEADBODY = ServerAccess.method("ThreadHTTP", "sendResponseHEADBODY",
+                String.class, byte[].class, OutputStream.class, Writer.class);
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'x');
+        sink = new NullOutputStream();
+    }
+
+    @Benchmark
+    public long head() throws Exception {
+        OutputStream out = new BufferedOutputStream(sink);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        ServerAccess.invoke(sendResponseHEAD, threadHttp, "text/html", bodySize, "HTTP/1.0 200 OK", writer);
+        return sink.count();
+    }
+
+    @Benchmark
+    public long headAndBody() throws Exception {
+        OutputStream out = new BufferedOutputStream(sink);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        ServerAccess.invoke(sendResponseHEADBODY, threadHttp, "text/html", body, out, writer);
+        return sink.count();
+    }
+}
@@ -0,0 +1,62 @@
+package serverbench;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+
+/**
+ * Reflective access to the server classes.
+ *
+ * <p>The server lives in the default package, which cannot be imported from a named package (and JMH
+ * refuses to generate benchmarks in the default package), so the benchmarks reach the hot-path
+ * methods through reflection. Lookups happen once per trial; only {@link Method#invoke} is paid
+ * per operation, which is a few nanoseconds against microsecond-scale parsing and I/O.</p>
+ */
+final class ServerAccess {
+
+    private ServerAccess() {
+    }
+
+    static Class<?> serverClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Server class " + name + " is not on the classpath", e);
+        }
+    }
+
+    /** Creates a ThreadHTTP that is not bound to a socket, for calling its parsing/response methods directly. */
+    static Object newThreadHttp(File rootDir, String defaultPage) {
+        try {
+            Constructor<?> ctor = serverClass("ThreadHTTP").getConstructor(File.class, String.class, Socket.class);
+            return ctor.newInstance(rootDir, defaultPage, null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Method method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = serverClass(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Invokes a method, rethrowing whatever the target threw instead of the reflection wrapper. */
+    static Object invoke(Method method, Object target, Object... args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package serverbench;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Static file responses of varying sizes through ThreadHTTP.processClientHTTPRequest, covering the
+ * path checks, content-type lookup, Files.readAllBytes and the response write, into a counting sink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class StaticFileBenchmark {
+
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int fileSize;
+
+    @Param({"GET", "HEAD"})
+    public String method;
+
+    private BenchmarkRoot root;
+    private Object threadHttp;
+    private Method processClientHTTPRequest;
+    private String[] requestLine;
+    private HashMap<String, String> headers;
+    private NullOutputStream sink;
+
+    @Setup
+    public void setup() throws Exception {
+        root = new BenchmarkRoot();
+        String path = root.payload(fileSize);
+        threadHttp = ServerAccess.newThreadHttp(root.dir(), "index.html");
+        processClientHTTPRequest = ServerAccess.method("ThreadHTTP", "processClientHTTPRequest",
+                OutputStream.class, Writer.class, Reader.class, String.class, String[].class, HashMap.class);
+        requestLine = new String[] {method, path, "HTTP/1.1"};
+        headers = new HashMap<>();
+        headers.put("Host", "localhost");
+        sink = new NullOutputStream();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        root.close();
+    }
+
+    @Benchmark
+    public long serve() throws Exception {
+        OutputStream out = new BufferedOutputStream(sink);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        Reader reader = new BufferedReader(new StringReader(""));
+        ServerAccess.invoke(processClientHTTPRequest, threadHttp, out, writer, reader, root.dir().getPath(),
+                requestLine, headers);
+        return sink.count();
+    }
+}
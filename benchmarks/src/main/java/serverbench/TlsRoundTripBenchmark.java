@@ -0,0 +1,134 @@
+package serverbench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full request/response round-trips over a loopback SSLSocket against a real HttpsServer.
+ *
+ * <p>The server runs in-process on a free port with a generated keystore and a temporary RootDir.
+ * It closes each connection after one response (HTTP/1.0), so every operation includes a TLS
+ * handshake: an abbreviated one when {@code resumeSessions} is true, a full one otherwise.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TlsRoundTripBenchmark {
+
+    @Param({"index", "65536", "1048576"})
+    public String resource;
+
+    @Param({"GET", "HEAD"})
+    public String method;
+
+    @Param({"true", "false"})
+    public boolean resumeSessions;
+
+    private BenchmarkRoot root;
+    private Runnable server;
+    private Thread serverThread;
+    private SSLSocketFactory clientFactory;
+    private int port;
+    private byte[] request;
+
+    @Setup
+    public void setup() throws Exception {
+        root = new BenchmarkRoot();
+        String keystorePath = root.keystore();
+        String path = resource.equals("index") ? "/index.html" : root.payload(Integer.parseInt(resource));
+        request = (method + " " + path + " HTTP/1.0\r\nHost: localhost\r\nUser-Agent: serverbench\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = (Runnable) ServerAccess.serverClass("HttpsServer")
+                .getConstructor(int.class, String.class, String.class, String.class)
+                .newInstance(port, keystorePath, BenchmarkRoot.KEYSTORE_PASSWORD, root.dir().getPath());
+        serverThread = new Thread(server, "bench-https-server");
+        serverThread.start();
+
+        // Trust the generated certificate, and nothing else
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        try (InputStream in = new FileInputStream(keystorePath)) {
+            trustStore.load(in, BenchmarkRoot.KEYSTORE_PASSWORD.toCharArray());
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagerFactory.getTrustManagers(), null);
+        clientFactory = clientContext.getSocketFactory();
+
+        awaitServer();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        server.getClass().getMethod("stop").invoke(server);
+        serverThread.join(TimeUnit.SECONDS.toMillis(40)); // stop() drains in-flight requests before run() returns
+        root.close();
+    }
+
+    @Benchmark
+    public long roundTrip() throws IOException {
+        try (SSLSocket socket = (SSLSocket) clientFactory.createSocket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[16384];
+            long received = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                received += n;
+            }
+            if (!resumeSessions) {
+                socket.getSession().invalidate();
+            }
+            return received;
+        }
+    }
+
+    private void awaitServer() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            try {
+                if (roundTrip() > 0) {
+                    return;
+                }
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("HttpsServer did not come up on port " + port, e);
+                }
+            }
+            Thread.sleep(100);
+        }
+    }
+}